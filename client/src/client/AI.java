@@ -1,165 +1,140 @@
 package client;
 
+import client.ai.OpeningBook;
+import client.ai.ParallelSearch;
+import client.ai.Solver;
+import client.ai.TranspositionTable;
 import findfour.shared.game.Board;
 import findfour.shared.game.Disc;
 
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.Vector;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Created by joran on 27-1-15.
  */
 public class AI {
     //----------------------------------Fields--------------------------------------------------------------------------
+    // Don't limit the depth by default, the time budget will stop the search in time.
+    public static final int DEFAULT_LOOKAHEAD = Board.COLUMNS * Board.ROWS;
+    // 2^20 entries of 16 bytes each, so the transposition table takes 16 MB.
+    private static final int TABLE_SIZE_BITS = 20;
     private ClientController clientController;
-    private State currentState;
+    private final ParallelSearch search;
+    private final Solver solver;
+    private final OpeningBook book;
+    private final Board position;
     private int lookahead;
+    private final long timeBudget;
+    // Whether the last move was searched, so the search statistics belong to it.
+    private boolean lastMoveSearched;
 
     //----------------------------------Constructor---------------------------------------------------------------------
-    public AI(ClientController c) {
+    public AI(ClientController c, long argTimeBudget) {
         this.clientController = c;
-        this.lookahead = 6;
-        currentState = new State(true);
+        this.lookahead = DEFAULT_LOOKAHEAD;
+        this.timeBudget = argTimeBudget;
+        // Search on every core by default, all threads share the transposition table.
+        this.search = new ParallelSearch(new TranspositionTable(TABLE_SIZE_BITS),
+                Runtime.getRuntime().availableProcessors());
+        this.solver = new Solver();
+        this.book = openBook(new File(OpeningBook.DEFAULT_FILE));
+        this.position = new Board();
     }
     //----------------------------------Methods-------------------------------------------------------------------------
     public void setLookahead(int lookahead) {
         this.lookahead = lookahead;
     }
 
-    public void doMove(Boolean myTurn) {
-        currentState = new State(myTurn);
+    // Synchronized with findBestMove, the threads can't be changed while searching.
+    public synchronized void setThreads(int threads) {
+        search.setThreads(Math.max(1, threads));
+    }
 
-        createDecisionTree(currentState);
-        calculateChanses(currentState);
+    public synchronized int getThreads() {
+        return search.getThreads();
+    }
 
-        ArrayList<State> bestmoves = getBestMove();
-        int randomint = new Random().nextInt(bestmoves.size());
+    public synchronized boolean isLastMoveSearched() {
+        return lastMoveSearched;
+    }
 
-        clientController.tryMove(bestmoves.get(randomint).col, clientController.getClientName());
+    public synchronized int getCompletedDepth() {
+        return search.getCompletedDepth();
     }
 
-    public int getHint( ) {
-        currentState = new State(true);
-        createDecisionTree(currentState);
-        calculateChanses(currentState);
+    public synchronized long getLastNodeCount() {
+        return search.getLastNodeCount();
+    }
 
-        ArrayList<State> bestmoves = getBestMove();
-        for (State t : bestmoves) {
-            System.out.println(t.getV());
-        }
+    public synchronized long getNodesPerSecond() {
+        return search.getNodesPerSecond();
+    }
+
+    public void doMove(Boolean myTurn) {
+        // The local player always plays the red discs on the client's board.
+        int col = findBestMove(myTurn ? Disc.Red : Disc.Yellow);
 
-        int randomint = new Random().nextInt(bestmoves.size());
-        return bestmoves.get(randomint).col;
+        clientController.tryMove(col, clientController.getClientName());
     }
 
-    ArrayList<State> getBestMove() {
-        ArrayList<State> temp = new ArrayList<State>();
-        for (State t : currentState.getNextStep()) {
-            if (temp.size() < 1) {
-                temp.add(t);
-            } else if (temp.get(0).v < t.v) {
-                temp.clear();
-                temp.add(t);
-            } else if (temp.get(0).v == t.v) {
-                temp.add(t);
-            }
-        }
-        return temp;
+    public int getHint() {
+        return findBestMove(Disc.Red);
     }
 
-    void createDecisionTree(State state) {
-        currentState.syncTo(clientController.getBoard());
-        Disc disc;
-        Vector<State> result = new Vector<State>();
-        for (int i = 0; i < Board.COLUMNS; i++) {
-            State temp = new State(!state.isMyTurn());
-            temp.syncTo(state);
-            if (temp.isMyTurn()) {
-                disc = Disc.Red;
-            } else {
-                disc = Disc.Yellow;
-            }
-            if (temp.isMoveValid(i, disc)) {
-                temp.makeMove(i, disc);
-                temp.depth = state.depth + 1;
-                temp.col = i;
-                result.add(temp);
-                if (temp.depth < lookahead) {
-                    createDecisionTree(temp);
-                }
-            }
+    synchronized int findBestMove(Disc disc) {
+        Board board = clientController.getBoard();
 
+        // Search on a copy of the board, so that the lock is only held while copying.
+        synchronized (board) {
+            position.syncTo(board);
         }
-        state.nextStep = result;
-    }
 
-    void createDecisionTree() {
-        createDecisionTree(currentState);
-    }
-    //Following functions calculate chance for a state tree
-    int calculateChance(State state) {
-        int result = 0;
-        if (state.hasWinner()) {
-            if (state.getWinner() == Disc.Red) {
-                return 110;
-            } else {
-                return -100;
-            }
+        lastMoveSearched = false;
+
+        int bookCol = book != null ? book.probe(position, disc) : -1;
+
+        if (bookCol != -1 && position.isMoveValid(bookCol, disc)) {
+            return bookCol;
         }
-        return result;
-    }
 
-    int calculateChanses(State state) {
-        int result = 0;
-        for (State s : state.getNextStep()) {
-            state.v = calculateChance(s);
-            state.v = state.v + calculateChanses(s) / (s.depth * 3);
-            result += state.v;
+        int emptySlots = Board.COLUMNS * Board.ROWS - position.getDiscCount();
+
+        // Positions with few enough empty slots are solved instead of searched.
+        if (emptySlots <= Solver.DEFAULT_THRESHOLD && !position.hasWinner()) {
+            return solver.solve(position, disc);
         }
-        return result;
+
+        lastMoveSearched = true;
+
+        return search.search(position, disc, lookahead, timeBudget);
     }
 
-    private class State extends Board {
-        public int v;
-        public int depth;
-        public int col;
-        public boolean out;
-        public Vector<State> nextStep;
-        private boolean myTurn;
-
-        State(Boolean myturn) {
-            this.myTurn = myturn;
-            col = 0;
-            v = 0;
-            depth = 0;
-            nextStep = new Vector<State>();
-            out = false;
+    private static OpeningBook openBook(File file) {
+        // The book is optional, without it the AI searches the opening moves as well.
+        if (!file.exists()) {
+            return null;
         }
 
-        public boolean isMyTurn() {
-            return myTurn;
-        }
+        try {
+            OpeningBook openingBook = OpeningBook.open(file);
 
-        public Vector<State> getNextStep() {
-            return nextStep;
-        }
+            System.out.println("[AI] loaded " + openingBook.size() + " positions from " + file);
 
-        public int getV() {
-            return v;
+            return openingBook;
+        } catch (IOException e) {
+            System.out.println("[AI] could not load opening book " + file + ": " + e.getMessage());
+
+            return null;
         }
     }
 
     //TODO remove test main
     public static void main(String[] args) {
         ClientController c = new ClientController();
-        AI ai = new AI(c);
+        AI ai = new AI(c, ClientController.AI_TIME_BUDGET);
         c.resetBoard();
-        ai.createDecisionTree();
-        ai.calculateChanses(ai.currentState);
-        for (State t : ai.currentState.getNextStep()) {
-            System.out.println(t.getV());
-        }
+        System.out.println(ai.getHint());
     }
 
 }
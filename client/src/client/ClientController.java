@@ -17,6 +17,9 @@ public class ClientController extends Thread implements Observer {
     private static final String INITIAL_NAME = "Name";
     private static final String INITIAL_GROUP = "19";
     public static final String[] INITIAL_EXTENSIONS = new String[0];
+    // The number of milliseconds the AI may think about a move, which leaves enough time to send
+    // the move before the server gives up on us.
+    public static final long AI_TIME_BUDGET = 1000;
     private boolean aiOn = false;
     private boolean connected;
     private HashMap<String, String> lobby = new HashMap<String, String>();
@@ -34,7 +37,7 @@ public class ClientController extends Thread implements Observer {
         return ai;
     }
 
-    private AI ai = new AI(this);
+    private AI ai = new AI(this, AI_TIME_BUDGET);
 
     // ---------------------------------------Constructor -----------------------------------------
     public ClientController(String argName, String argGroup) {
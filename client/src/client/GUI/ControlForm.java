@@ -1,5 +1,6 @@
 package client.GUI;
 
+import client.AI;
 import client.ClientController;
 import findfour.shared.game.Disc;
 
@@ -46,14 +47,17 @@ public class ControlForm extends Thread {
     private JButton hintButton;
     private JFormattedTextField formattedTextField2;
     private JButton setDepthButton;
+    private JFormattedTextField threadsField;
+    private JButton setThreadsButton;
 
     //--------------------------------------------Constructor-----------------------------------------------------------
     public ControlForm(GuiController argGuiController) {
-        formattedTextField2.setValue(6);
+        formattedTextField2.setValue(AI.DEFAULT_LOOKAHEAD);
         disableAIButton.setEnabled(false);
         hintButton.setEnabled(false);
         this.guiController = argGuiController;
         this.client = GuiController.getClientController();
+        threadsField.setValue(client.getAi().getThreads());
         setGameState("Not your turn;");
         canvas = new DrawBoard();
         canvas.setPreferredSize(new Dimension(CANVAS_WIDTH, CANVAS_HEIGHT));
@@ -104,6 +108,13 @@ public class ControlForm extends Thread {
                 setDepth();
             }
         });
+
+        setThreadsButton.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                setThreads();
+            }
+        });
     }
     //-------------------------------------------Methods----------------------------------------------------------------
     public void run() {
@@ -133,6 +144,14 @@ public class ControlForm extends Thread {
         int col = client.getAi().getHint();
         cleanUpChat();
         textArea1.append(String.format("[AI] You could go for: %s %n", col));
+
+        // Show how fast the search was, to compare the speed on different numbers of threads.
+        AI ai = client.getAi();
+        if (ai.isLastMoveSearched()) {
+            textArea1.append(String.format("[AI] Depth %d, %d nodes, %d nodes/s on %d threads %n",
+                    ai.getCompletedDepth(), ai.getLastNodeCount(), ai.getNodesPerSecond(),
+                    ai.getThreads()));
+        }
     }
 
     public void close() {
@@ -196,6 +215,10 @@ public class ControlForm extends Thread {
         client.getAi().setLookahead((int)formattedTextField2.getValue());
     }
 
+    public void setThreads() {
+        client.getAi().setThreads((int) threadsField.getValue());
+    }
+
     public void disableHintButton() {
         hintButton.setEnabled(false);
     }
@@ -0,0 +1,90 @@
+package client.ai;
+
+import findfour.shared.game.Board;
+
+/**
+ * Operations on bitboards with the layout of Board: each column occupies <code>ROWS + 1</code>
+ * consecutive bits starting at the bottom slot, where the extra bit is always empty.
+ */
+final class Bitboards {
+    static final int COLUMN_BITS = Board.ROWS + 1;
+    /**
+     * The bitboard with the bottom slot of every column set.
+     */
+    static final long BOTTOM_MASK = computeBottomMask();
+    /**
+     * The bitboard with all playable slots set.
+     */
+    static final long BOARD_MASK = BOTTOM_MASK * ((1L << Board.ROWS) - 1);
+    /**
+     * The bitboard with all slots on the first, third and fifth row from the bottom set.
+     */
+    static final long ODD_ROWS_MASK = BOTTOM_MASK * 0x15;
+
+    private Bitboards() {
+    }
+
+    /**
+     * Returns the slots in which a disc can be dropped.
+     */
+    static long possible(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Returns the empty slots, reachable or not, which would complete a sequence of four for the
+     * player with the given discs.
+     */
+    static long winningPositions(long discs, long mask) {
+        // Vertical: three discs directly below.
+        long result = (discs << 1) & (discs << 2) & (discs << 3);
+
+        result |= winningPositions(discs, COLUMN_BITS);
+        result |= winningPositions(discs, COLUMN_BITS - 1);
+        result |= winningPositions(discs, COLUMN_BITS + 1);
+
+        return result & (BOARD_MASK ^ mask);
+    }
+
+    /**
+     * Returns the slots which would complete a sequence along the direction of the given step.
+     */
+    private static long winningPositions(long discs, int step) {
+        long result = 0;
+        long pair = (discs << step) & (discs << 2 * step);
+
+        // Three to one side or two to one side and one to the other.
+        result |= pair & (discs << 3 * step);
+        result |= pair & (discs >>> step);
+
+        pair = (discs >>> step) & (discs >>> 2 * step);
+        result |= pair & (discs >>> 3 * step);
+        result |= pair & (discs << step);
+
+        return result;
+    }
+
+    /**
+     * Returns the bitboard with all slots of a column set.
+     */
+    static long columnMask(int column) {
+        return ((1L << Board.ROWS) - 1) << (column * COLUMN_BITS);
+    }
+
+    /**
+     * Returns the column of the lowest slot that is set in a bitboard.
+     */
+    static int getColumn(long move) {
+        return Long.numberOfTrailingZeros(move) / COLUMN_BITS;
+    }
+
+    private static long computeBottomMask() {
+        long mask = 0;
+
+        for (int column = 0; column < Board.COLUMNS; column++) {
+            mask |= 1L << (column * COLUMN_BITS);
+        }
+
+        return mask;
+    }
+}
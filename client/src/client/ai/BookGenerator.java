@@ -0,0 +1,90 @@
+package client.ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import findfour.shared.game.Board;
+import findfour.shared.game.Disc;
+
+/**
+ * Builds an opening book offline by searching every position of the first moves of a game to a
+ * fixed depth. Usage: <code>BookGenerator [file] [plies] [depth]</code>, where the book covers all
+ * positions with less than <code>plies</code> discs.
+ * <p>
+ * The moves in the book are the results of the search, so the book has to be rebuilt whenever the
+ * evaluation changes. Otherwise the AI keeps playing the moves of the old evaluation.
+ */
+public class BookGenerator {
+    private static final int DEFAULT_PLIES = 4;
+    private static final int DEFAULT_DEPTH = 18;
+    private static final int TABLE_SIZE_BITS = 22;
+
+    private final ParallelSearch search;
+    private final int plies;
+    private final int depth;
+    private final Set<Long> visited;
+    private long[] entries;
+    private int count;
+
+    private BookGenerator(int argPlies, int argDepth) {
+        this.search = new ParallelSearch(new TranspositionTable(TABLE_SIZE_BITS),
+                Runtime.getRuntime().availableProcessors());
+        this.plies = argPlies;
+        this.depth = argDepth;
+        this.visited = new HashSet<Long>();
+        this.entries = new long[Board.COLUMNS];
+    }
+
+    public static void main(String[] args) throws IOException {
+        File file = new File(args.length > 0 ? args[0] : OpeningBook.DEFAULT_FILE);
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+        BookGenerator generator = new BookGenerator(plies, depth);
+        long start = System.currentTimeMillis();
+
+        generator.generate(new Board(), Disc.Red);
+
+        long[] entries = Arrays.copyOf(generator.entries, generator.count);
+
+        OpeningBook.write(file, entries);
+
+        System.out.println("Wrote " + entries.length + " positions to " + file + " in "
+                + (System.currentTimeMillis() - start) / 1000 + " s");
+    }
+
+    private void generate(Board board, Disc disc) {
+        if (board.getDiscCount() >= plies || board.hasWinner()) {
+            return;
+        }
+
+        // Mirror images and different move orders lead to the same position, only search it once.
+        if (!visited.add(OpeningBook.getCanonicalKey(board, disc))) {
+            return;
+        }
+
+        int column = search.search(board, disc, depth, 0);
+
+        if (count == entries.length) {
+            entries = Arrays.copyOf(entries, count * 2);
+        }
+
+        entries[count++] = OpeningBook.createEntry(board, disc, column);
+
+        if (count % 100 == 0) {
+            System.out.println(count + " positions searched");
+        }
+
+        Disc opponent = disc == Disc.Red ? Disc.Yellow : Disc.Red;
+
+        for (int i = 0; i < Board.COLUMNS; i++) {
+            if (board.isMoveValid(i, disc)) {
+                board.makeMove(i, disc);
+                generate(board, opponent);
+                board.undoMove(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package client.ai;
+
+import findfour.shared.game.Board;
+
+/**
+ * Scores positions at the depth at which the search stops looking ahead, from the view of the
+ * player to move. The score is computed from the bitboards of both players in a fixed number of
+ * operations, without looking at individual slots.
+ * <p>
+ * The score consists of three parts:
+ * <ul>
+ * <li>Threats: empty slots that would complete a sequence of four, whether they can be played yet
+ * or not. Such a slot has to be avoided by the opponent for the rest of the game.</li>
+ * <li>Threat parity: if neither player gives in, the columns fill up from the bottom in turns, so
+ * the player who moved first gets the slots on odd rows (counted from the bottom) and the other
+ * player those on even rows. A threat on a row its owner will get is worth more.</li>
+ * <li>Centre weighting: each disc scores the number of possible sequences through its slot, which
+ * is highest in the centre.</li>
+ * </ul>
+ */
+final class Evaluator {
+    /**
+     * The highest absolute score, which is well below the score of a win.
+     */
+    static final int MAX_SCORE = 500;
+
+    private static final int THREAT_SCORE = 16;
+    private static final int PARITY_SCORE = 24;
+    private static final int SEQUENCE_LENGTH = 4;
+    /**
+     * The distinct numbers of sequences through a slot, and for each of them the bitboard of the
+     * slots with that number, so that the centre weighting takes a few bit counts.
+     */
+    private static final int[] WEIGHTS;
+    private static final long[] WEIGHT_MASKS;
+
+    static {
+        int[] sequences = countSequences();
+        int distinct = 0;
+        int[] weights = new int[sequences.length];
+        long[] masks = new long[sequences.length];
+
+        for (int position = 0; position < sequences.length; position++) {
+            if (sequences[position] == 0) {
+                continue;
+            }
+
+            int index = 0;
+
+            while (index < distinct && weights[index] != sequences[position]) {
+                index++;
+            }
+
+            if (index == distinct) {
+                weights[distinct++] = sequences[position];
+            }
+
+            masks[index] |= 1L << position;
+        }
+
+        WEIGHTS = new int[distinct];
+        WEIGHT_MASKS = new long[distinct];
+        System.arraycopy(weights, 0, WEIGHTS, 0, distinct);
+        System.arraycopy(masks, 0, WEIGHT_MASKS, 0, distinct);
+    }
+
+    private Evaluator() {
+    }
+
+    /**
+     * Returns the score of a position from the view of the player to move.
+     * @param current The discs of the player to move
+     * @param opponent The discs of the other player
+     */
+    static int evaluate(long current, long opponent) {
+        long mask = current | opponent;
+        long currentThreats = Bitboards.winningPositions(current, mask);
+        long opponentThreats = Bitboards.winningPositions(opponent, mask);
+
+        // With an even number of discs on the board, the player to move is the one who moved first
+        // and gets the odd rows.
+        long currentRows = (Long.bitCount(mask) & 1) == 0 ? Bitboards.ODD_ROWS_MASK
+                : Bitboards.BOARD_MASK ^ Bitboards.ODD_ROWS_MASK;
+        long opponentRows = Bitboards.BOARD_MASK ^ currentRows;
+
+        int score = THREAT_SCORE * (Long.bitCount(currentThreats) - Long.bitCount(opponentThreats));
+
+        score += PARITY_SCORE * (Long.bitCount(currentThreats & currentRows)
+                - Long.bitCount(opponentThreats & opponentRows));
+
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            score += WEIGHTS[i] * (Long.bitCount(current & WEIGHT_MASKS[i])
+                    - Long.bitCount(opponent & WEIGHT_MASKS[i]));
+        }
+
+        return Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+    }
+
+    /**
+     * Counts the number of possible sequences of four through each slot, indexed by bit position.
+     */
+    private static int[] countSequences() {
+        int[] sequences = new int[Board.COLUMNS * Bitboards.COLUMN_BITS];
+        int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+        for (int column = 0; column < Board.COLUMNS; column++) {
+            for (int height = 0; height < Board.ROWS; height++) {
+                for (int[] direction : directions) {
+                    int endColumn = column + (SEQUENCE_LENGTH - 1) * direction[0];
+                    int endHeight = height + (SEQUENCE_LENGTH - 1) * direction[1];
+
+                    if (endColumn >= Board.COLUMNS || endHeight < 0 || endHeight >= Board.ROWS) {
+                        continue;
+                    }
+
+                    for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+                        int position = (column + i * direction[0]) * Bitboards.COLUMN_BITS
+                                + height + i * direction[1];
+
+                        sequences[position]++;
+                    }
+                }
+            }
+        }
+
+        return sequences;
+    }
+}
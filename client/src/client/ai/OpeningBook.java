@@ -0,0 +1,209 @@
+package client.ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import findfour.shared.game.Board;
+import findfour.shared.game.Disc;
+
+/**
+ * A precomputed table of the best moves in opening positions, stored in a binary file that is
+ * memory-mapped instead of read, so opening a book is instant and its pages are shared with other
+ * clients on the same machine.
+ * <p>
+ * Positions are keyed by the sum of the bitboard of the player to move and the bitboard of all
+ * discs, which is unique for every position and independent of which color is to move. A position
+ * and its mirror image have the same best move mirrored, so only the smaller of their two keys is
+ * stored.
+ * <p>
+ * The file starts with a magic number and the number of entries, followed by the entries sorted by
+ * key. Each entry is a single <code>long</code> holding the key above the move in the low byte, so a
+ * lookup is a binary search over the mapped file.
+ */
+public class OpeningBook {
+    /**
+     * The file the AI loads its opening book from.
+     */
+    public static final String DEFAULT_FILE = "openings.book";
+
+    private static final int MAGIC = 0x46344F42;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 8;
+    private static final int KEY_SHIFT = 8;
+    private static final long MOVE_MASK = (1L << KEY_SHIFT) - 1;
+    private static final int COLUMN_BITS = Board.ROWS + 1;
+    private static final long COLUMN_MASK = (1L << COLUMN_BITS) - 1;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    private OpeningBook(MappedByteBuffer argBuffer) throws IOException {
+        if (argBuffer.capacity() < HEADER_SIZE || argBuffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an opening book");
+        }
+
+        this.buffer = argBuffer;
+        this.count = argBuffer.getInt(4);
+
+        if (argBuffer.capacity() != HEADER_SIZE + (long) count * ENTRY_SIZE) {
+            throw new IOException("Opening book is truncated");
+        }
+    }
+
+    /**
+     * Opens an opening book by mapping it into memory.
+     * @param file The file containing the book
+     * @throws IOException If the file cannot be read or is not a valid opening book
+     */
+    public static OpeningBook open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = input.getChannel();
+
+            // The mapping stays valid after the file is closed.
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes an opening book.
+     * @param file The file to write the book to
+     * @param entries The entries, as returned by createEntry, in any order
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(File file, long[] entries) throws IOException {
+        long[] sorted = entries.clone();
+
+        // Keys are unique and stored above the move, so entries sort in the same order as keys.
+        Arrays.sort(sorted);
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(sorted.length);
+
+            for (long entry : sorted) {
+                output.writeLong(entry);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Creates the entry to store for the best move in a position.
+     * @param position The position
+     * @param disc The color of the player to move
+     * @param column The best column to make a move in
+     */
+    public static long createEntry(Board position, Disc disc, int column) {
+        long key = getKey(position, disc);
+        long mirrorKey = mirror(key);
+
+        if (mirrorKey < key) {
+            return mirrorKey << KEY_SHIFT | mirrorColumn(column);
+        }
+
+        return key << KEY_SHIFT | column;
+    }
+
+    /**
+     * Returns the key of a position with its mirror image folded in, so that both have the same key.
+     * @param position The position
+     * @param disc The color of the player to move
+     */
+    public static long getCanonicalKey(Board position, Disc disc) {
+        long key = getKey(position, disc);
+
+        return Math.min(key, mirror(key));
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the best column to make a move in according to the book, or -1 if the position is
+     * not in the book.
+     * @param position The position
+     * @param disc The color of the player to move
+     */
+    public int probe(Board position, Disc disc) {
+        long key = getKey(position, disc);
+        long mirrorKey = mirror(key);
+        boolean mirrored = mirrorKey < key;
+        long entry = find(mirrored ? mirrorKey : key);
+
+        if (entry == -1) {
+            return -1;
+        }
+
+        int column = (int) (entry & MOVE_MASK);
+
+        return mirrored ? mirrorColumn(column) : column;
+    }
+
+    private long find(long key) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long entry = buffer.getLong(HEADER_SIZE + middle * ENTRY_SIZE);
+            long middleKey = entry >>> KEY_SHIFT;
+
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    private static long getKey(Board position, Disc disc) {
+        long current = position.getDiscs(disc);
+        long mask = current | position.getDiscs(disc == Disc.Red ? Disc.Yellow : Disc.Red);
+
+        // The sum of each column is different for every height and combination of discs, which is
+        // what makes the key unique, and it never carries into the next column.
+        return current + mask;
+    }
+
+    /**
+     * Mirrors a key by reversing the order of its columns.
+     */
+    private static long mirror(long key) {
+        long result = 0;
+
+        for (int column = 0; column < Board.COLUMNS; column++) {
+            long bits = (key >>> (column * COLUMN_BITS)) & COLUMN_MASK;
+
+            result |= bits << ((Board.COLUMNS - 1 - column) * COLUMN_BITS);
+        }
+
+        return result;
+    }
+
+    private static int mirrorColumn(int column) {
+        return Board.COLUMNS - 1 - column;
+    }
+}
@@ -0,0 +1,177 @@
+package client.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import findfour.shared.game.Board;
+import findfour.shared.game.Disc;
+
+/**
+ * Searches a position on multiple threads using Lazy SMP: every thread runs its own iterative
+ * deepening search of the same position, and the threads only cooperate through a shared
+ * transposition table. The helper threads fill the table with results that the main thread can
+ * reuse, and half of them start one iteration deeper so that they run ahead of the main thread.
+ * The move found by the main thread is returned once it finishes, after which the helpers are
+ * stopped.
+ */
+public class ParallelSearch {
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final TranspositionTable table;
+    private final AtomicBoolean stopSignal;
+    private final Searcher mainSearcher;
+    private final List<Searcher> helpers;
+    private ExecutorService helperPool;
+    private long lastNodeCount;
+    private long lastDuration;
+
+    /**
+     * Creates a new parallel search.
+     * @param argTable The transposition table shared by all threads
+     * @param threads The number of threads to search with, including the calling thread
+     */
+    public ParallelSearch(TranspositionTable argTable, int threads) {
+        this.table = argTable;
+        this.stopSignal = new AtomicBoolean();
+        this.mainSearcher = new Searcher(argTable, stopSignal);
+        this.helpers = new ArrayList<Searcher>();
+
+        setThreads(threads);
+    }
+
+    /**
+     * Sets the number of threads to search with, including the calling thread. This must not be
+     * called while searching.
+     * @param threads The number of threads, which is at least 1
+     */
+    public void setThreads(int threads) {
+        if (helperPool != null) {
+            helperPool.shutdown();
+            helperPool = null;
+        }
+
+        helpers.clear();
+
+        for (int i = 1; i < threads; i++) {
+            helpers.add(new Searcher(table, stopSignal));
+        }
+
+        if (!helpers.isEmpty()) {
+            helperPool = Executors.newFixedThreadPool(helpers.size(), new ThreadFactory() {
+                private int count;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "AI-helper" + count++);
+
+                    // Don't keep the client alive because of idle search threads.
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of threads this search uses.
+     */
+    public int getThreads() {
+        return helpers.size() + 1;
+    }
+
+    /**
+     * Searches the best column for a player to make a move in on all threads.
+     * @param position The board to search from, which is not modified while searching
+     * @param disc The color of the player to move
+     * @param maxDepth The maximum number of moves to look ahead
+     * @param timeBudget The number of milliseconds the search may take, or 0 for no limit
+     * @return the best column, or -1 if there are no valid moves
+     */
+    public int search(final Board position, final Disc disc, final int maxDepth,
+            final long timeBudget) {
+        long startTime = System.nanoTime();
+        long startNodes = getTotalNodeCount();
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+
+        table.newSearch();
+        stopSignal.set(false);
+
+        for (int i = 0; i < helpers.size(); i++) {
+            final Searcher helper = helpers.get(i);
+            final int startDepth = 1 + i % 2;
+
+            futures.add(helperPool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return helper.search(position, disc, startDepth, maxDepth, timeBudget);
+                }
+            }));
+        }
+
+        int column = mainSearcher.search(position, disc, 1, maxDepth, timeBudget);
+
+        stopSignal.set(true);
+        awaitHelpers(futures);
+
+        lastNodeCount = getTotalNodeCount() - startNodes;
+        lastDuration = System.nanoTime() - startTime;
+
+        return column;
+    }
+
+    /**
+     * Returns the depth of the deepest iteration the main thread completed in the last search.
+     */
+    public int getCompletedDepth() {
+        return mainSearcher.getCompletedDepth();
+    }
+
+    /**
+     * Returns the number of positions all threads visited during the last search.
+     */
+    public long getLastNodeCount() {
+        return lastNodeCount;
+    }
+
+    /**
+     * Returns the number of positions all threads visited per second during the last search.
+     */
+    public long getNodesPerSecond() {
+        if (lastDuration == 0) {
+            return 0;
+        }
+
+        return (long) (lastNodeCount * NANOS_PER_SECOND / lastDuration);
+    }
+
+    private long getTotalNodeCount() {
+        long nodes = mainSearcher.getNodeCount();
+
+        for (Searcher helper : helpers) {
+            nodes += helper.getNodeCount();
+        }
+
+        return nodes;
+    }
+
+    private void awaitHelpers(List<Future<Integer>> futures) {
+        for (Future<Integer> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // A failing helper only means less help, the main thread's result is still valid.
+                System.out.println("[AI] helper search failed: " + e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package client.ai;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import findfour.shared.game.Board;
+import findfour.shared.game.Disc;
+
+/**
+ * Depth-first negamax search with alpha-beta pruning. The search makes and undoes moves on a
+ * single private board, so it does not allocate anything while walking the game tree. Results are
+ * stored in a transposition table so that positions reached through different move orders are
+ * only searched once. Positions at the maximum depth are scored by Evaluator, and a player who can
+ * win with the next move is recognized without searching that move.
+ * <p>
+ * The search deepens iteratively, searching one move deeper on each iteration until the maximum
+ * depth is reached or the time budget runs out. The best moves of each iteration are kept in the
+ * transposition table, so that the next iteration tries them first.
+ * <p>
+ * A searcher is not thread safe, but multiple searchers can search the same position at the same
+ * time while sharing a transposition table, see ParallelSearch.
+ */
+public class Searcher {
+    /**
+     * The score of a won position. Wins found deeper in the tree score slightly lower so that the
+     * search prefers the fastest win and the slowest loss.
+     */
+    public static final int WIN_SCORE = 1000;
+    /**
+     * The order in which the columns are tried. Central columns take part in more sequences and are
+     * more likely to be the best move, which makes alpha-beta cut off earlier.
+     */
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+    private static final int INFINITY = WIN_SCORE + 1;
+    /**
+     * Scores beyond this value are wins or losses, whose score depends on the ply they were found
+     * at.
+     */
+    private static final int WIN_THRESHOLD = WIN_SCORE - Board.COLUMNS * Board.ROWS - 1;
+    /**
+     * The key that is mixed into the board hash when yellow is to move, as the same discs with a
+     * different player to move is a different position.
+     */
+    private static final long YELLOW_TO_MOVE_KEY = 0x9E3779B97F4A7C15L;
+    /**
+     * The number of nodes to visit between checks of the deadline, minus one. Reading the clock on
+     * every node would take a considerable part of the search time.
+     */
+    private static final long DEADLINE_CHECK_MASK = 4095;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final Board board;
+    private final TranspositionTable table;
+    private final AtomicBoolean stopSignal;
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private int completedDepth;
+    private int rootScore;
+
+    /**
+     * Creates a new searcher which only stops on its time budget.
+     * @param argTable The transposition table to use
+     */
+    public Searcher(TranspositionTable argTable) {
+        this(argTable, new AtomicBoolean());
+    }
+
+    /**
+     * Creates a new searcher which aborts its search once the given signal is set.
+     * @param argTable The transposition table to use
+     * @param argStopSignal The signal to stop searching
+     */
+    public Searcher(TranspositionTable argTable, AtomicBoolean argStopSignal) {
+        this.board = new Board();
+        this.table = argTable;
+        this.stopSignal = argStopSignal;
+    }
+
+    /**
+     * Searches the best column for a player to make a move in, without a time limit.
+     * @param position The board to search from, which is not modified
+     * @param disc The color of the player to move
+     * @param depth The number of moves to look ahead
+     * @return the best column, or -1 if there are no valid moves
+     */
+    public int search(Board position, Disc disc, int depth) {
+        return search(position, disc, 1, depth, 0);
+    }
+
+    /**
+     * Searches the best column for a player to make a move in. If the time budget runs out, the
+     * best column of the deepest completed iteration is returned.
+     * @param position The board to search from, which is not modified
+     * @param disc The color of the player to move
+     * @param startDepth The depth of the first iteration
+     * @param maxDepth The maximum number of moves to look ahead
+     * @param timeBudget The number of milliseconds the search may take, or 0 for no limit
+     * @return the best column, or -1 if there are no valid moves
+     */
+    public int search(Board position, Disc disc, int startDepth, int maxDepth, long timeBudget) {
+        board.syncTo(position);
+
+        deadline = timeBudget > 0 ? System.nanoTime() + timeBudget * NANOS_PER_MILLI : 0;
+        aborted = false;
+        completedDepth = 0;
+
+        int emptySlots = Board.COLUMNS * Board.ROWS - board.getDiscCount();
+        int bestColumn = -1;
+
+        for (int depth = startDepth; depth <= Math.min(maxDepth, emptySlots); depth++) {
+            int column = searchRoot(disc, depth);
+
+            if (aborted) {
+                // Only use the result of an aborted iteration if no iteration has completed, which
+                // only happens when the time budget is too small to even look one move ahead.
+                if (bestColumn == -1) {
+                    bestColumn = column;
+                }
+                break;
+            }
+
+            bestColumn = column;
+            completedDepth = depth;
+
+            // There is no point in looking further ahead once a win or loss has been found.
+            if (Math.abs(rootScore) > WIN_THRESHOLD) {
+                break;
+            }
+        }
+
+        return bestColumn != -1 ? bestColumn : getFirstValidColumn(disc);
+    }
+
+    /**
+     * Returns the depth of the deepest iteration the last search completed.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the number of positions visited by this searcher.
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    private int searchRoot(Disc disc, int depth) {
+        Disc opponent = getOpponent(disc);
+        long key = getKey(disc);
+        int hashMove = getHashMove(table.probe(key));
+        int alpha = -INFINITY;
+        int bestColumn = -1;
+
+        for (int i = -1; i < COLUMN_ORDER.length; i++) {
+            int column = getColumn(i, hashMove);
+
+            if (column == -1 || !board.isMoveValid(column, disc)) {
+                continue;
+            }
+
+            int score = scoreMove(column, disc, opponent, depth, 0, alpha, INFINITY);
+
+            if (aborted) {
+                break;
+            }
+
+            if (bestColumn == -1 || score > alpha) {
+                alpha = score;
+                bestColumn = column;
+            }
+        }
+
+        if (bestColumn != -1 && !aborted) {
+            table.store(key, depth, alpha, TranspositionTable.BOUND_EXACT, bestColumn);
+        }
+
+        rootScore = alpha;
+
+        return bestColumn;
+    }
+
+    private int negamax(Disc disc, int depth, int ply, int alpha, int beta) {
+        nodes++;
+
+        if ((nodes & DEADLINE_CHECK_MASK) == 0 && (stopSignal.get()
+                || deadline != 0 && System.nanoTime() > deadline)) {
+            aborted = true;
+        }
+
+        if (aborted) {
+            return 0;
+        }
+
+        if (board.isFull()) {
+            return 0;
+        }
+
+        Disc opponent = getOpponent(disc);
+        long current = board.getDiscs(disc);
+        long mask = current | board.getDiscs(opponent);
+
+        // A player who can complete a sequence right away has won, there is no need to search.
+        if ((Bitboards.winningPositions(current, mask) & Bitboards.possible(mask)) != 0) {
+            return WIN_SCORE - ply - 1;
+        }
+
+        if (depth == 0) {
+            return Evaluator.evaluate(current, current ^ mask);
+        }
+
+        long key = getKey(disc);
+        long entry = table.probe(key);
+        int hashMove = getHashMove(entry);
+
+        if (entry != TranspositionTable.NO_ENTRY && TranspositionTable.getDepth(entry) >= depth) {
+            int score = fromTableScore(TranspositionTable.getScore(entry), ply);
+            int bound = TranspositionTable.getBound(entry);
+
+            if (bound == TranspositionTable.BOUND_EXACT) {
+                return score;
+            } else if (bound == TranspositionTable.BOUND_LOWER && score > alpha) {
+                alpha = score;
+            } else if (bound == TranspositionTable.BOUND_UPPER && score < beta) {
+                beta = score;
+            }
+
+            if (alpha >= beta) {
+                return score;
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestColumn = TranspositionTable.NO_MOVE;
+
+        // Try the best move of an earlier search of this position first, as it is the most likely
+        // move to cause a cut-off.
+        for (int i = -1; i < COLUMN_ORDER.length; i++) {
+            int column = getColumn(i, hashMove);
+
+            if (column == -1 || !board.isMoveValid(column, disc)) {
+                continue;
+            }
+
+            int score = scoreMove(column, disc, opponent, depth, ply, alpha, beta);
+
+            if (aborted) {
+                // The scores of an aborted search are meaningless, don't store them.
+                return 0;
+            }
+
+            if (score > best) {
+                best = score;
+                bestColumn = column;
+
+                if (score > alpha) {
+                    alpha = score;
+
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound;
+
+        if (best <= originalAlpha) {
+            bound = TranspositionTable.BOUND_UPPER;
+        } else if (best >= beta) {
+            bound = TranspositionTable.BOUND_LOWER;
+        } else {
+            bound = TranspositionTable.BOUND_EXACT;
+        }
+
+        table.store(key, depth, toTableScore(best, ply), bound, bestColumn);
+
+        return best;
+    }
+
+    private int scoreMove(int column, Disc disc, Disc opponent, int depth, int ply, int alpha,
+            int beta) {
+        board.makeMove(column, disc);
+
+        int score;
+
+        if (board.hasWinner()) {
+            score = WIN_SCORE - ply - 1;
+        } else {
+            score = -negamax(opponent, depth - 1, ply + 1, -beta, -alpha);
+        }
+
+        board.undoMove(column);
+
+        return score;
+    }
+
+    private int getFirstValidColumn(Disc disc) {
+        for (int column : COLUMN_ORDER) {
+            if (board.isMoveValid(column, disc)) {
+                return column;
+            }
+        }
+
+        return -1;
+    }
+
+    private long getKey(Disc disc) {
+        return disc == Disc.Yellow ? board.getHash() ^ YELLOW_TO_MOVE_KEY : board.getHash();
+    }
+
+    /**
+     * Returns the column to try at index i of the move order, where index -1 is the hash move and
+     * the hash move is skipped at its regular index. Returns -1 if there is no column to try.
+     */
+    private static int getColumn(int i, int hashMove) {
+        if (i == -1) {
+            return hashMove;
+        }
+
+        int column = COLUMN_ORDER[i];
+
+        return column == hashMove ? -1 : column;
+    }
+
+    private static int getHashMove(long entry) {
+        if (entry == TranspositionTable.NO_ENTRY) {
+            return -1;
+        }
+
+        int move = TranspositionTable.getMove(entry);
+
+        return move == TranspositionTable.NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Converts a score relative to the root into a score relative to the current position, as a
+     * position can be reached at different plies.
+     */
+    private static int toTableScore(int score, int ply) {
+        if (score > WIN_THRESHOLD) {
+            return score + ply;
+        } else if (score < -WIN_THRESHOLD) {
+            return score - ply;
+        }
+
+        return score;
+    }
+
+    private static int fromTableScore(int score, int ply) {
+        if (score > WIN_THRESHOLD) {
+            return score - ply;
+        } else if (score < -WIN_THRESHOLD) {
+            return score + ply;
+        }
+
+        return score;
+    }
+
+    private static Disc getOpponent(Disc disc) {
+        return disc == Disc.Red ? Disc.Yellow : Disc.Red;
+    }
+}
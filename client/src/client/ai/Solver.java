@@ -0,0 +1,302 @@
+package client.ai;
+
+import findfour.shared.game.Board;
+import findfour.shared.game.Disc;
+
+/**
+ * Solves positions exactly, proving whether the player to move wins, draws or loses with perfect
+ * play. Unlike Searcher this always searches to the end of the game, so it is only fast enough
+ * once few empty slots remain.
+ * <p>
+ * The solver works directly on two bitboards: the discs of the player to move and all discs. The
+ * slots in which either player would complete a sequence are computed with a few shifts, see
+ * Bitboards, which allows the search to cut off early: a player who can win immediately has won, a
+ * player who has to block two threats at once has lost, and moves that allow the opponent to win
+ * right away are never tried. The remaining moves are tried in order of the number of threats they create.
+ * <p>
+ * The score of a position is positive if the player to move wins, 0 for a draw and negative if
+ * that player loses. Its magnitude is higher the faster the game is won, so the best move is the
+ * one with the highest score. The score is found by a series of null-window searches that narrow
+ * down the range it lies in, which prune more than a single search with a wide window.
+ */
+public class Solver {
+    /**
+     * The number of empty slots at or below which the AI solves positions by default. Positions
+     * reached in play with this many empty slots are solved within a few milliseconds, with 4 more
+     * it can take well over 100 ms.
+     */
+    public static final int DEFAULT_THRESHOLD = 24;
+
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+    private static final int SLOTS = Board.COLUMNS * Board.ROWS;
+    private static final int MIN_SCORE = -SLOTS / 2 + 3;
+
+    private final Table table;
+    // The moves and their number of threats for each number of discs on the board, so that
+    // sorting the moves does not allocate.
+    private final long[][] sortedMoves;
+    private final int[][] threats;
+    private long nodes;
+    private int score;
+
+    /**
+     * Creates a new solver.
+     */
+    public Solver() {
+        this.table = new Table();
+        this.sortedMoves = new long[SLOTS][Board.COLUMNS];
+        this.threats = new int[SLOTS][Board.COLUMNS];
+    }
+
+    /**
+     * Returns the best column for a player to make a move in. If every move loses, the move that
+     * delays the loss the longest is returned.
+     * @param position The board to solve, which must not have a winner yet
+     * @param disc The color of the player to move
+     * @return the best column, or -1 if there are no valid moves
+     */
+    public int solve(Board position, Disc disc) {
+        long current = position.getDiscs(disc);
+        long mask = current | position.getDiscs(getOpponent(disc));
+        int moves = position.getDiscCount();
+        long possible = Bitboards.possible(mask);
+
+        nodes = 0;
+
+        if (possible == 0) {
+            score = 0;
+            return -1;
+        }
+
+        // Win right away if possible, the search below assumes that is not the case.
+        long winning = Bitboards.winningPositions(current, mask) & possible;
+
+        if (winning != 0) {
+            score = (SLOTS + 1 - moves) / 2;
+            return Bitboards.getColumn(Long.lowestOneBit(winning));
+        }
+
+        long candidates = nonLosingMoves(current, mask);
+
+        if (candidates == 0) {
+            // Every move loses, any of them will do.
+            score = -(SLOTS - moves) / 2;
+            return Bitboards.getColumn(Long.lowestOneBit(possible));
+        }
+
+        int bestColumn = -1;
+
+        for (int column : COLUMN_ORDER) {
+            long move = candidates & Bitboards.columnMask(column);
+
+            if (move == 0) {
+                continue;
+            }
+
+            int moveScore = -solve(current ^ mask, mask | move, moves + 1);
+
+            if (bestColumn == -1 || moveScore > score) {
+                score = moveScore;
+                bestColumn = column;
+            }
+        }
+
+        return bestColumn;
+    }
+
+    /**
+     * Returns the score of the position of the last solve call from the view of the player to
+     * move, which is positive for a win, 0 for a draw and negative for a loss.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of positions visited by the last solve call.
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Solves a position in which the player to move cannot win immediately.
+     */
+    private int solve(long current, long mask, int moves) {
+        if (canWinNext(current, mask)) {
+            return (SLOTS + 1 - moves) / 2;
+        }
+
+        int min = -(SLOTS - moves) / 2;
+        int max = (SLOTS + 1 - moves) / 2;
+
+        while (min < max) {
+            int medium = min + (max - min) / 2;
+
+            // Search closer to 0 first, as most positions are close to a draw.
+            if (medium <= 0 && min / 2 < medium) {
+                medium = min / 2;
+            } else if (medium >= 0 && max / 2 > medium) {
+                medium = max / 2;
+            }
+
+            int result = negamax(current, mask, moves, medium, medium + 1);
+
+            if (result <= medium) {
+                max = result;
+            } else {
+                min = result;
+            }
+        }
+
+        return min;
+    }
+
+    /**
+     * Negamax with alpha-beta pruning for a position in which the player to move cannot win
+     * immediately. Returns the exact score if it lies within the window, an upper bound if it is
+     * below alpha or a lower bound if it is above beta.
+     */
+    private int negamax(long current, long mask, int moves, int alpha, int beta) {
+        nodes++;
+
+        long next = nonLosingMoves(current, mask);
+
+        if (next == 0) {
+            // The opponent wins with the next move.
+            return -(SLOTS - moves) / 2;
+        }
+
+        if (moves >= SLOTS - 2) {
+            // Neither player can win with the last two moves.
+            return 0;
+        }
+
+        // The opponent cannot win with the next move, which bounds the score from below.
+        int min = -(SLOTS - 2 - moves) / 2;
+
+        if (alpha < min) {
+            alpha = min;
+
+            if (alpha >= beta) {
+                return alpha;
+            }
+        }
+
+        // We cannot win with this move, which bounds the score from above, as does a stored result.
+        int max = (SLOTS - 1 - moves) / 2;
+        int stored = table.get(current + mask);
+
+        if (stored != 0) {
+            max = stored + MIN_SCORE - 1;
+        }
+
+        if (beta > max) {
+            beta = max;
+
+            if (alpha >= beta) {
+                return beta;
+            }
+        }
+
+        // Sort the moves by the number of threats they create, keeping the central columns first
+        // among moves with an equal number of threats. This is an insertion sort on small arrays.
+        long[] sorted = sortedMoves[moves];
+        int[] sortedThreats = threats[moves];
+        int count = 0;
+
+        for (int i = COLUMN_ORDER.length - 1; i >= 0; i--) {
+            long move = next & Bitboards.columnMask(COLUMN_ORDER[i]);
+
+            if (move == 0) {
+                continue;
+            }
+
+            int moveThreats = Long.bitCount(Bitboards.winningPositions(current | move, mask));
+            int j = count++;
+
+            for (; j > 0 && sortedThreats[j - 1] > moveThreats; j--) {
+                sorted[j] = sorted[j - 1];
+                sortedThreats[j] = sortedThreats[j - 1];
+            }
+
+            sorted[j] = move;
+            sortedThreats[j] = moveThreats;
+        }
+
+        for (int i = count - 1; i >= 0; i--) {
+            int result = -negamax(current ^ mask, mask | sorted[i], moves + 1, -beta, -alpha);
+
+            if (result >= beta) {
+                return result;
+            }
+
+            if (result > alpha) {
+                alpha = result;
+            }
+        }
+
+        // Every move failed low or was exact, so alpha is an upper bound of the score.
+        table.put(current + mask, alpha - MIN_SCORE + 1);
+
+        return alpha;
+    }
+
+    private static boolean canWinNext(long current, long mask) {
+        return (Bitboards.winningPositions(current, mask) & Bitboards.possible(mask)) != 0;
+    }
+
+    /**
+     * Returns the moves that do not let the opponent win with the next move. This is empty if the
+     * opponent has more than one way to win, or if the only way to stop it allows another win.
+     */
+    private static long nonLosingMoves(long current, long mask) {
+        long possible = Bitboards.possible(mask);
+        long opponentWins = Bitboards.winningPositions(current ^ mask, mask);
+        long forced = possible & opponentWins;
+
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) {
+                return 0;
+            }
+
+            possible = forced;
+        }
+
+        // Don't play directly below a slot the opponent wins with.
+        return possible & ~(opponentWins >> 1);
+    }
+
+    private static Disc getOpponent(Disc disc) {
+        return disc == Disc.Red ? Disc.Yellow : Disc.Red;
+    }
+
+    /**
+     * A hash table of upper bounds of scores. The key of a position, the sum of the discs of the
+     * player to move and all discs, is unique and fits in 49 bits. Because the table size is a
+     * prime above 2^17, the index together with the low 32 bits of the key identify it, so only
+     * those are stored.
+     */
+    private static class Table {
+        private static final int SIZE = 1048573;
+
+        private final int[] keys = new int[SIZE];
+        private final byte[] values = new byte[SIZE];
+
+        void put(long key, int value) {
+            int index = (int) (key % SIZE);
+
+            keys[index] = (int) key;
+            values[index] = (byte) value;
+        }
+
+        /**
+         * Returns the stored value of a key, or 0 if it has none.
+         */
+        int get(long key) {
+            int index = (int) (key % SIZE);
+
+            return keys[index] == (int) key ? values[index] : 0;
+        }
+    }
+}
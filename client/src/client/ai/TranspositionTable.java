@@ -0,0 +1,158 @@
+package client.ai;
+
+/**
+ * A fixed-size hash table which stores search results by position hash, so that positions reached
+ * through different move orders only have to be searched once.
+ * <p>
+ * Entries are packed into a single <code>long</code> and stored in primitive arrays, so storing and
+ * probing never allocates. An entry is only replaced by a result of an equal or deeper search
+ * unless it was stored during an earlier search, as deeper results are more expensive to recompute
+ * and results of older searches are less likely to be needed again.
+ * <p>
+ * The table can be shared by multiple search threads without locking. Each slot stores the key
+ * XORed with the entry, so a slot that was torn by two threads writing it at the same time no
+ * longer matches the key of either entry and is simply treated as missing.
+ */
+public class TranspositionTable {
+    /**
+     * The stored score is the exact score of the position.
+     */
+    public static final int BOUND_EXACT = 0;
+    /**
+     * The stored score is a lower bound of the score of the position.
+     */
+    public static final int BOUND_LOWER = 1;
+    /**
+     * The stored score is an upper bound of the score of the position.
+     */
+    public static final int BOUND_UPPER = 2;
+    /**
+     * The value returned by probe if the table has no entry for a position.
+     */
+    public static final long NO_ENTRY = 0;
+    /**
+     * The move stored when an entry has no best move.
+     */
+    public static final int NO_MOVE = 0xF;
+
+    // Entry layout, from the least significant bit: score (16 bits, offset so it is never
+    // negative), depth (8 bits), bound (2 bits), move (4 bits), generation (8 bits) and a bit that
+    // is always set so that a stored entry is never equal to NO_ENTRY.
+    private static final int SCORE_OFFSET = 1 << 15;
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 24;
+    private static final int MOVE_SHIFT = 26;
+    private static final int GENERATION_SHIFT = 30;
+    private static final long USED_BIT = 1L << 38;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int indexMask;
+    private int generation;
+
+    /**
+     * Creates a new transposition table.
+     * @param sizeBits The base 2 logarithm of the number of entries the table can hold
+     */
+    public TranspositionTable(int sizeBits) {
+        this.keys = new long[1 << sizeBits];
+        this.entries = new long[1 << sizeBits];
+        this.indexMask = (1 << sizeBits) - 1;
+    }
+
+    /**
+     * Signals the start of a new search, which makes the entries of earlier searches replaceable.
+     * This must not be called while a search is using the table.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Removes all entries from the table.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            keys[i] = 0;
+            entries[i] = NO_ENTRY;
+        }
+    }
+
+    /**
+     * Returns the packed entry of a position or NO_ENTRY if the table has no entry for it.
+     * @param key The hash of the position
+     */
+    public long probe(long key) {
+        int index = (int) key & indexMask;
+        long entry = entries[index];
+
+        if ((keys[index] ^ entry) != key) {
+            return NO_ENTRY;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Stores the result of a search. An entry of the same position is always replaced. An entry
+     * of another position is only kept if it is from the current generation and was searched
+     * deeper.
+     * @param key The hash of the position
+     * @param depth The depth the position was searched to
+     * @param score The score of the position
+     * @param bound The type of bound the score is
+     * @param move The best move found, or NO_MOVE
+     */
+    public void store(long key, int depth, int score, int bound, int move) {
+        int index = (int) key & indexMask;
+        long current = entries[index];
+
+        if (current != NO_ENTRY && (keys[index] ^ current) != key
+                && getGeneration(current) == generation && getDepth(current) > depth) {
+            return;
+        }
+
+        long entry = USED_BIT | ((long) generation << GENERATION_SHIFT)
+                | ((long) move << MOVE_SHIFT) | ((long) bound << BOUND_SHIFT)
+                | ((long) depth << DEPTH_SHIFT) | (score + SCORE_OFFSET);
+
+        keys[index] = key ^ entry;
+        entries[index] = entry;
+    }
+
+    /**
+     * Returns the score of an entry.
+     * @param entry The packed entry
+     */
+    public static int getScore(long entry) {
+        return (int) (entry & 0xFFFF) - SCORE_OFFSET;
+    }
+
+    /**
+     * Returns the depth of an entry.
+     * @param entry The packed entry
+     */
+    public static int getDepth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Returns the bound type of an entry.
+     * @param entry The packed entry
+     */
+    public static int getBound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 0x3;
+    }
+
+    /**
+     * Returns the best move of an entry, or NO_MOVE if it has none.
+     * @param entry The packed entry
+     */
+    public static int getMove(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & 0xF;
+    }
+
+    private static int getGeneration(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+    }
+}
@@ -0,0 +1,211 @@
+package client.network;
+
+import client.ClientController;
+import findfour.shared.network.FrameReader;
+import findfour.shared.network.FrameWriter;
+import findfour.shared.network.MalformedFrameException;
+import findfour.shared.network.TcpClient;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The protocol used after the handshake when the server accepted the Binary extension.
+ * Players are sent as ids, the server sends the name of an id before it is first used.
+ */
+public class BinaryProtocol extends Protocol {
+    //----------------------------------Fields--------------------------------------------------------------------------
+    //To server
+    private static final int OP_READY = 1;
+    private static final int OP_DO_MOVE = 2;
+    private static final int OP_LOCAL_CHAT = 3;
+    private static final int OP_GLOBAL_CHAT = 4;
+    private static final int OP_ERROR = 7;
+    //From server
+    private static final int OP_NAME = 16;
+    private static final int OP_START_GAME = 17;
+    private static final int OP_REQUEST_MOVE = 18;
+    private static final int OP_DONE_MOVE = 19;
+    private static final int OP_GAME_WON = 20;
+    private static final int OP_GAME_DRAW = 21;
+    private static final int OP_STATE_CHANGE = 22;
+    private static final int OP_MESSAGE = 23;
+    private static final int OP_SERVER_ERROR = 25;
+    private static final int OP_OPPONENT_DISCONNECTED = 26;
+    private static final int OP_LOBBY_SNAPSHOT = 27;
+    private static final int STATE_INGAME = 0;
+    private static final int STATE_INLOBBY = 1;
+    private static final int STATE_INQUEUE = 2;
+    private static final int STATE_DISCONNECTED = 3;
+    private static final int ERR_SYNTAX = 10;
+    private final FrameReader reader = new FrameReader();
+    private final Map<Integer, String> names = new HashMap<Integer, String>();
+
+    //----------------------------------Constructor---------------------------------------------------------------------
+    public BinaryProtocol(TcpClient c, ClientController argClient) {
+        super(c, argClient);
+    }
+
+    //----------------------------------Methods-------------------------------------------------------------------------
+    //Send
+    @Override
+    public void sendReady() {
+        client.send(new FrameWriter(OP_READY).toFrame());
+        clientController.resetBoard();
+    }
+
+    @Override
+    public void sendGlobalChat(String message) {
+        if (clientController.getConnection().isChatEnabeled()) {
+            client.send(new FrameWriter(OP_GLOBAL_CHAT).writeString(message).toFrame());
+        }
+    }
+
+    @Override
+    public void sendLocalChat(String message) {
+        if (clientController.getConnection().isChatEnabeled()) {
+            client.send(new FrameWriter(OP_LOCAL_CHAT).writeString(message).toFrame());
+        }
+    }
+
+    @Override
+    public void sendDoMove(String col) {
+        client.send(new FrameWriter(OP_DO_MOVE).writeVarInt(Integer.parseInt(col)).toFrame());
+    }
+
+    @Override
+    public void sendError(String code) {
+        sendError(code, "");
+    }
+
+    @Override
+    public void sendError(String code, String message) {
+        client.send(new FrameWriter(OP_ERROR).writeVarInt(Integer.parseInt(code))
+                .writeString(message).toFrame());
+    }
+
+    //Recieve
+    @Override
+    public void handleFrame(ByteBuffer frame) {
+        try {
+            switch (reader.read(frame)) {
+                case OP_NAME:
+                    names.put(reader.readVarInt(), reader.readString());
+                    break;
+                case OP_START_GAME:
+                    handleStartGame(reader.readVarInt(), reader.readVarInt());
+                    break;
+                case OP_REQUEST_MOVE:
+                    if (isMe(reader.readVarInt())) {
+                        clientController.setMyTurnTrue();
+                    }
+                    break;
+                case OP_DONE_MOVE:
+                    String player = getName(reader.readVarInt());
+                    clientController.doMove(reader.readVarInt(), player);
+                    break;
+                case OP_GAME_WON:
+                    clientController.endGame(getName(reader.readVarInt()));
+                    break;
+                case OP_GAME_DRAW:
+                    clientController.endGame(null);
+                    break;
+                case OP_STATE_CHANGE:
+                    int count = reader.readVarInt();
+                    for (int i = 0; i < count; i++) {
+                        handleStateChange(reader.readVarInt(), reader.readVarInt());
+                    }
+                    break;
+                case OP_LOBBY_SNAPSHOT:
+                    handleSnapshot();
+                    break;
+                case OP_MESSAGE:
+                    handleMessage(reader.readVarInt(), reader.readBoolean(), reader.readString());
+                    break;
+                case OP_SERVER_ERROR:
+                    System.out.println(String.format(
+                            "An error has occurred errorcode %03d, and descripton %s.",
+                            reader.readVarInt(), reader.readString()));
+                    break;
+                case OP_OPPONENT_DISCONNECTED:
+                    System.out.println(getName(reader.readVarInt()) + " has disconnected.");
+                    break;
+            }
+        } catch (MalformedFrameException e) {
+            sendError(String.valueOf(ERR_SYNTAX), e.getMessage());
+        }
+    }
+
+    //Handle
+    private void handleStartGame(int first, int second) {
+        if (isMe(first)) {
+            clientController.setOpponent(getName(second));
+        } else if (isMe(second)) {
+            clientController.setOpponent(getName(first));
+        }
+        clientController.resetBoard();
+        clientController.getGuiController().openControlForm();
+    }
+
+    private void handleStateChange(int id, int state) {
+        String name = getName(id);
+        if (state == STATE_DISCONNECTED) {
+            clientController.removePlayerFromLobby(name);
+            names.remove(id);
+        } else {
+            clientController.addPlayerToLobby(name, toLobbyState(state));
+        }
+    }
+
+    private void handleSnapshot() {
+        //The snapshot contains every player that is online, including ourselves
+        HashMap<String, String> lobby = new HashMap<String, String>();
+        names.clear();
+        int count = reader.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int id = reader.readVarInt();
+            int state = reader.readVarInt();
+            String name = reader.readString();
+            names.put(id, name);
+            if (!isMe(id)) {
+                lobby.put(name, toLobbyState(state));
+            }
+        }
+        clientController.setLobby(lobby);
+        clientController.getGuiController().getMainForm().updateLobby();
+    }
+
+    private void handleMessage(int id, boolean global, String message) {
+        //The forms need the words of the message as strings, as sent by the text protocol
+        String text = String.format("%s %s%s", getName(id), global ? "[global]" : "[local]",
+                message);
+        String[] args = text.split(" ");
+        clientController.getGuiController().getMainForm().newMessage(args);
+        if (clientController.getGuiController().getControlForm() != null) {
+            clientController.getGuiController().getControlForm().newMessage(args);
+        }
+    }
+
+    private static String toLobbyState(int state) {
+        if (state == STATE_INQUEUE) {
+            return "ready";
+        } else if (state == STATE_INGAME) {
+            return "inGame";
+        }
+        return null;
+    }
+
+    private boolean isMe(int id) {
+        String name = clientController.getClientName();
+        return name != null && name.equals(names.get(id));
+    }
+
+    private String getName(int id) {
+        String name = names.get(id);
+        if (name == null) {
+            throw new MalformedFrameException("Unknown player id " + id);
+        }
+        return name;
+    }
+}
@@ -5,6 +5,8 @@ import findfour.shared.events.EventHandler;
 import findfour.shared.network.TcpClient;
 import javafx.beans.InvalidationListener;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by joran on 21-1-15.
  */
@@ -12,7 +14,7 @@ public class Connection extends Thread {
     private boolean chatEnabeled;
     private final TcpClient tcpclient;
     private ClientController clientController;
-    private Protocol protocol;
+    private volatile Protocol protocol;
     private String servername = "127.0.0.1";
     private int serverport = 6666;
 
@@ -119,4 +121,9 @@ public class Connection extends Thread {
         System.out.println("Message: " + packet);
         protocol.handlePacket(packet);
     }
+
+    @EventHandler(eventId = TcpClient.EVENT_FRAME_RECEIVED)
+    private void frameReceived(ByteBuffer frame) {
+        protocol.handleFrame(frame);
+    }
 }
\ No newline at end of file
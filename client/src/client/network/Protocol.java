@@ -2,15 +2,16 @@ package client.network;
 
 import client.ClientController;
 import findfour.shared.network.TcpClient;
-import findfour.shared.utils.StringUtils;
+import findfour.shared.utils.CommandTable;
+import findfour.shared.utils.Tokenizer;
 
-import java.util.Objects;
+import java.nio.ByteBuffer;
 
 public class Protocol {
     //----------------------------------Fields--------------------------------------------------------------------------
     TcpClient client;
     ClientController clientController;
-    private static final String EXTENSIONS = "Chat Lobby";
+    private static final String EXTENSIONS = "Chat Lobby Binary";
     //To server
     private static final String CMD_JOIN = "join";
     private static final String CMD_READY = "ready_for_game";
@@ -29,11 +30,29 @@ public class Protocol {
     private static final String CMD_DONE_MOVE = "done_move";
     private static final String CMD_GAME_END = "game_end";
     private static final Character DELIMITER = ' ';
+    private static final int ID_ACCEPT = 0;
+    private static final int ID_START_GAME = 1;
+    private static final int ID_REQUEST_MOVE = 2;
+    private static final int ID_DONE_MOVE = 3;
+    private static final int ID_GAME_END = 4;
+    private static final int ID_ERROR = 5;
+    private static final int ID_MESSAGE = 6;
+    private static final int ID_STATECHANGE = 7;
+    private final Tokenizer tokenizer = new Tokenizer(DELIMITER, false);
+    private final CommandTable commands = new CommandTable();
 
     //----------------------------------Constructor---------------------------------------------------------------------
     public Protocol(TcpClient c, ClientController argClient) {
         this.client = c;
         this.clientController = argClient;
+        commands.register(CMD_ACCEPT, ID_ACCEPT);
+        commands.register(CMD_START_GAME, ID_START_GAME);
+        commands.register(CMD_REQUEST_MOVE, ID_REQUEST_MOVE);
+        commands.register(CMD_DONE_MOVE, ID_DONE_MOVE);
+        commands.register(CMD_GAME_END, ID_GAME_END);
+        commands.register(CMD_ERROR, ID_ERROR);
+        commands.register(CMD_MESSAGE, ID_MESSAGE);
+        commands.register(CMD_STATECHANGE, ID_STATECHANGE);
     }
     //----------------------------------Methods-------------------------------------------------------------------------
     //Send
@@ -76,111 +95,132 @@ public class Protocol {
 
     //Recieve
     public void handlePacket(String packet) {
-        String command = StringUtils.extractCommand(packet, DELIMITER);
-        String[] args = StringUtils.extractArgs(packet, DELIMITER, false);
-        switch (command) {
-            case CMD_ACCEPT:
-                handleAccept(args);
+        tokenizer.tokenize(packet);
+        switch (commands.lookup(tokenizer)) {
+            case ID_ACCEPT:
+                handleAccept();
                 break;
-            case CMD_START_GAME:
-                handleStartGame(args);
+            case ID_START_GAME:
+                handleStartGame();
                 break;
-            case CMD_REQUEST_MOVE:
-                handleRequestMove(args);
+            case ID_REQUEST_MOVE:
+                handleRequestMove();
                 break;
-            case CMD_DONE_MOVE:
-                handleDoneMove(args);
+            case ID_DONE_MOVE:
+                handleDoneMove();
                 break;
-            case CMD_GAME_END:
-                handleGameEnd(args);
+            case ID_GAME_END:
+                handleGameEnd();
                 break;
-            case CMD_ERROR:
-                handleError(args);
+            case ID_ERROR:
+                handleError();
                 break;
-            case CMD_MESSAGE:
-                handleMessage(args);
+            case ID_MESSAGE:
+                handleMessage();
                 break;
-            case CMD_STATECHANGE:
-                handleStateChange(args);
+            case ID_STATECHANGE:
+                handleStateChange();
                 break;
         }
     }
 
+    public void handleFrame(ByteBuffer frame) {
+        //Only the binary protocol receives frames
+    }
+
     //Handle
-    public void handleAccept(String[] args) {
-        if (args[1].equals("Chat") || args[2].equals("Chat") || args[3].equals("Chat")) {
-            clientController.getConnection().setChatEnabeled(true);
+    public void handleAccept() {
+        boolean binary = false;
+        for (int i = 1; i < tokenizer.getArgCount(); i++) {
+            if (tokenizer.argEquals(i, "Chat")) {
+                clientController.getConnection().setChatEnabeled(true);
+            } else if (tokenizer.argEquals(i, "Binary")) {
+                binary = true;
+            }
+        }
+        //Switch before returning, the server sends frames right after the accept
+        if (binary) {
+            client.setBinaryFraming();
+            clientController.getConnection().setProtocol(new BinaryProtocol(client,
+                    clientController));
         }
     }
 
-    public void handleStartGame(String[] args) {
-        if (args.length < 2) {
+    public void handleStartGame() {
+        if (tokenizer.getArgCount() < 2) {
             client.send(ERR_SYNTAX);
         } else {
-
-            if (Objects.equals(args[0], clientController.getClientName())) {
-                clientController.setOpponent(args[1]);
-            } else if (Objects.equals(args[1], clientController.getClientName())) {
-                clientController.setOpponent(args[0]);
+            String name = clientController.getClientName();
+            if (name != null && tokenizer.argEquals(0, name)) {
+                clientController.setOpponent(tokenizer.getArg(1));
+            } else if (name != null && tokenizer.argEquals(1, name)) {
+                clientController.setOpponent(tokenizer.getArg(0));
             }
             clientController.resetBoard();
             clientController.getGuiController().openControlForm();
         }
     }
 
-    public void handleRequestMove(String[] args) {
-        if (Objects.equals(args[0], clientController.getClientName())) {
+    public void handleRequestMove() {
+        String name = clientController.getClientName();
+        if (tokenizer.getArgCount() > 0 && name != null && tokenizer.argEquals(0, name)) {
             clientController.setMyTurnTrue();
         }
     }
 
-    public void handleDoneMove(String[] args) {
-        if (args.length < 2) {
+    public void handleDoneMove() {
+        if (tokenizer.getArgCount() < 2) {
             client.send(ERR_SYNTAX);
-        } else if (args[1].matches("[0-9]")) {
-            clientController.doMove(Integer.parseInt(args[1]), args[0]);
+        } else if (tokenizer.getArgLength(1) == 1 && tokenizer.isArgInt(1)) {
+            clientController.doMove(tokenizer.getArgInt(1), tokenizer.getArg(0));
         }
     }
 
-    public void handleGameEnd(String[] args) {
-        if (args.length > 0) {
-            clientController.endGame(args[0]);
+    public void handleGameEnd() {
+        if (tokenizer.getArgCount() > 0) {
+            clientController.endGame(tokenizer.getArg(0));
         } else {
             clientController.endGame(null);
         }
     }
 
-    public void handleError(String[] args) {
-        if (args.length == 1) {
-            System.out.println(String.format("An error has occurred errorcode %s.", args[0]));
-        } else {
+    public void handleError() {
+        if (tokenizer.getArgCount() == 1) {
+            System.out.println(String.format("An error has occurred errorcode %s.",
+                    tokenizer.getArg(0)));
+        } else if (tokenizer.getArgCount() > 1) {
             System.out.println(String.format(
-                    "An error has occurred errorcode %s, and descripton %s.", args[0], args[1]));
+                    "An error has occurred errorcode %s, and descripton %s.", tokenizer.getArg(0),
+                    tokenizer.getArg(1)));
         }
     }
 
-    public void handleMessage(String[] args) {
+    public void handleMessage() {
+        //The forms need the words of the message as strings
+        String[] args = new String[tokenizer.getArgCount()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = tokenizer.getArg(i);
+        }
         clientController.getGuiController().getMainForm().newMessage(args);
         if (clientController.getGuiController().getControlForm() != null) {
             clientController.getGuiController().getControlForm().newMessage(args);
         }
     }
 
-    public void handleStateChange(String[] args) {
-        switch (args[1]) {
-            case "lobby":
-                clientController.addPlayerToLobby(args[0]);
-                break;
-            case "lobby_ready":
-                clientController.addPlayerToLobby(args[0], "ready");
-                break;
-            case "offline":
-                clientController.removePlayerFromLobby(args[0]);
-                break;
-            case "game":
-                clientController.addPlayerToLobby(args[0], "inGame");
-                break;
+    public void handleStateChange() {
+        if (tokenizer.getArgCount() < 2) {
+            return;
+        }
+        String name = tokenizer.getArg(0);
+        if (tokenizer.argEquals(1, "lobby")) {
+            clientController.addPlayerToLobby(name);
+        } else if (tokenizer.argEquals(1, "lobby_ready")) {
+            clientController.addPlayerToLobby(name, "ready");
+        } else if (tokenizer.argEquals(1, "offline")) {
+            clientController.removePlayerFromLobby(name);
+        } else if (tokenizer.argEquals(1, "game")) {
+            clientController.addPlayerToLobby(name, "inGame");
         }
     }
 
-}
\ No newline at end of file
+}
@@ -13,7 +13,7 @@ public final class Constants {
     /**
      * The space separated list of extensions supported by this server.
      */
-    public static final String SUPPORTED_EXTENSIONS = "Lobby Chat Challenge";
+    public static final String SUPPORTED_EXTENSIONS = "Lobby Chat Challenge Binary";
     /**
      * The name of the lobby extension as described in the protocol.
      */
@@ -26,4 +26,9 @@ public final class Constants {
      * The name of the challenge extension as described in the protocol.
      */
     public static final String EXT_CHALLENGE = "Challenge";
+    /**
+     * The name of our binary protocol extension, with which the client and server switch to
+     * binary frames after the handshake.
+     */
+    public static final String EXT_BINARY = "Binary";
 }
@@ -3,6 +3,7 @@ package server;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 
 import server.commands.CommandHandler;
 import server.commands.CommandInvoker;
@@ -16,7 +17,10 @@ import findfour.shared.events.EventHandler;
 import findfour.shared.logging.ConsoleListener;
 import findfour.shared.logging.Log;
 import findfour.shared.logging.LogLevel;
+import findfour.shared.network.IoMode;
+import findfour.shared.network.OverflowPolicy;
 import findfour.shared.network.TcpServer;
+import findfour.shared.network.VirtualThreads;
 import findfour.shared.utils.StringUtils;
 
 /**
@@ -39,6 +43,7 @@ public final class Main {
     private final RoomManager roomManager;
     private final MatchMaker matchMaker;
     private final Challenger challenger;
+    private final TimeoutManager timeoutManager;
     private final BufferedReader input;
     private final CommandInvoker commandInvoker;
     private boolean keepRunning;
@@ -52,6 +57,7 @@ public final class Main {
         this.roomManager = new RoomManager();
         this.matchMaker = new MatchMaker();
         this.challenger = new Challenger(playerManager);
+        this.timeoutManager = new TimeoutManager();
         this.input = new BufferedReader(new InputStreamReader(System.in));
         this.commandInvoker = new CommandInvoker();
         this.keepRunning = true;
@@ -185,6 +191,127 @@ public final class Main {
         Log.info(LogLevel.Minimal, "%s debug mode", value ? "Enabled" : "Disabled");
     }
 
+    /**
+     * Handles the setIoMode command used to set how the server handles the connections of clients.
+     * The mode takes effect the next time the server is started.
+     * @param mode The I/O mode to use.
+     */
+    //@ requires mode != null;
+    @CommandHandler
+    private void cmdSetIoMode(String mode) {
+        if (mode.equals("blocking")) {
+            server.setIoMode(IoMode.Blocking);
+        } else if (mode.equals("selector")) {
+            server.setIoMode(IoMode.Selector);
+        } else if (mode.equals("virtual")) {
+            server.setIoMode(IoMode.Virtual);
+
+            if (!VirtualThreads.isSupported()) {
+                Log.warning(LogLevel.Minimal,
+                        "Virtual threads require Java 21, platform threads will be used instead");
+            }
+        } else {
+            Log.error(LogLevel.Minimal, "Unknown I/O mode: %s", mode);
+            return;
+        }
+
+        if (server.isRunning()) {
+            Log.info(LogLevel.Minimal, "Set I/O mode to: %s (restart the server to apply it)",
+                    mode);
+        } else {
+            Log.info(LogLevel.Minimal, "Set I/O mode to: %s", mode);
+        }
+    }
+
+    /**
+     * Handles the setSendQueueLimit command used to set how many packets can be queued for a
+     * client before the overflow policy applies. The limit applies to clients that connect after
+     * this command.
+     * @param limit The maximum number of queued packets.
+     */
+    @CommandHandler
+    private void cmdSetSendQueueLimit(int limit) {
+        if (limit <= 0) {
+            Log.error(LogLevel.Minimal, "The send queue limit must be positive");
+            return;
+        }
+
+        server.setSendQueueLimit(limit);
+
+        Log.info(LogLevel.Minimal, "Set send queue limit to: %d packets", limit);
+    }
+
+    /**
+     * Handles the setOverflowPolicy command used to set what happens when a client's send queue is
+     * full. The policy applies to clients that connect after this command.
+     * @param policy The overflow policy to use.
+     */
+    //@ requires policy != null;
+    @CommandHandler
+    private void cmdSetOverflowPolicy(String policy) {
+        if (policy.equals("drop")) {
+            server.setOverflowPolicy(OverflowPolicy.Drop);
+        } else if (policy.equals("disconnect")) {
+            server.setOverflowPolicy(OverflowPolicy.Disconnect);
+        } else {
+            Log.error(LogLevel.Minimal, "Unknown overflow policy: %s", policy);
+            return;
+        }
+
+        Log.info(LogLevel.Minimal, "Set overflow policy to: %s", policy);
+    }
+
+    /**
+     * Handles the setJoinTimeout command used to set how long a client has to join after
+     * connecting before it is disconnected.
+     * @param seconds The timeout in seconds, or 0 to disable it.
+     */
+    @CommandHandler
+    private void cmdSetJoinTimeout(int seconds) {
+        if (seconds < 0) {
+            Log.error(LogLevel.Minimal, "The join timeout can't be negative");
+            return;
+        }
+
+        timeoutManager.setJoinTimeout(seconds);
+
+        Log.info(LogLevel.Minimal, "Set join timeout to: %d seconds", seconds);
+    }
+
+    /**
+     * Handles the setLobbyIdleTimeout command used to set how long a player can be idle in the
+     * lobby before it is disconnected.
+     * @param seconds The timeout in seconds, or 0 to disable it.
+     */
+    @CommandHandler
+    private void cmdSetLobbyIdleTimeout(int seconds) {
+        if (seconds < 0) {
+            Log.error(LogLevel.Minimal, "The lobby idle timeout can't be negative");
+            return;
+        }
+
+        timeoutManager.setLobbyIdleTimeout(seconds);
+
+        Log.info(LogLevel.Minimal, "Set lobby idle timeout to: %d seconds", seconds);
+    }
+
+    /**
+     * Handles the setMoveTimeout command used to set how long a player has to make a move before
+     * the game is forfeited.
+     * @param seconds The timeout in seconds, or 0 to disable it.
+     */
+    @CommandHandler
+    private void cmdSetMoveTimeout(int seconds) {
+        if (seconds < 0) {
+            Log.error(LogLevel.Minimal, "The move timeout can't be negative");
+            return;
+        }
+
+        timeoutManager.setMoveTimeout(seconds);
+
+        Log.info(LogLevel.Minimal, "Set move timeout to: %d seconds", seconds);
+    }
+
     /**
      * Handles the listClients command used to list all connected clients and some basic information
      * about them.
@@ -203,7 +330,7 @@ public final class Main {
     @CommandHandler
     private void cmdListGames() {
         for (GameRoom game : roomManager.getGameRooms()) {
-            Log.info(LogLevel.Minimal, "%s (%d spectators)", game.getName(),
+            Log.info(LogLevel.Minimal, "%d: %s (%d spectators)", game.getId(), game.getName(),
                     game.getSpectatorCount());
         }
     }
@@ -223,10 +350,12 @@ public final class Main {
             String room = player.getRoom().getName();
             String protocol = player.getProtocol().getName();
             String extensions = player.getExtensions();
+            int rating = matchMaker.getRatings().getRating(name);
 
             Log.info(LogLevel.Minimal,
-                    "Name: %s, state: %s, group: %s, room: %s, protocol: %s, extensions: %s", name,
-                    state, group, room, protocol, extensions);
+                    "Name: %s, state: %s, group: %s, room: %s, protocol: %s, extensions: %s, "
+                            + "rating: %d", name, state, group, room, protocol, extensions,
+                    rating);
         } else {
             Log.info(LogLevel.Minimal, "No client named % was found", name);
         }
@@ -242,6 +371,10 @@ public final class Main {
     @EventHandler(eventId = TcpServer.EVENT_STARTED)
     private void eventStarted(int port) {
         Log.info(LogLevel.Minimal, "Started server on port %d", port);
+
+        roomManager.getLobby().startUpdates();
+        timeoutManager.start();
+        matchMaker.startMatching();
     }
 
     /**
@@ -263,6 +396,10 @@ public final class Main {
      */
     @EventHandler(eventId = TcpServer.EVENT_STOPPED)
     private void eventStopped() {
+        roomManager.getLobby().stopUpdates();
+        timeoutManager.stop();
+        matchMaker.stopMatching();
+
         Log.info(LogLevel.Minimal, "Server stopped");
     }
 
@@ -279,6 +416,7 @@ public final class Main {
         Log.info(LogLevel.Normal, "Client connected from %s", host);
 
         playerManager.createSession(client);
+        timeoutManager.watch(playerManager.get(client));
     }
 
     /**
@@ -308,13 +446,32 @@ public final class Main {
     //@ requires playerManager.hasSession(client) == true;
     @EventHandler(eventId = TcpServer.EVENT_PACKET_RECEIVED)
     private void eventPacketReceived(TcpServer.Client client, String packet) {
-        Player player = playerManager.get(client);
+        Player player = client.getAttachment(Player.class);
 
         Log.debug("Received packet from %s: %s", player.getName(), packet);
 
+        player.touch();
         player.getProtocol().handlePacket(packet);
     }
 
+    /**
+     * Handles the frameReceived event raised by the server once a binary frame is received from a
+     * client.
+     * @param client The client which send the frame
+     * @param frame The payload of the frame, which is only valid during this call
+     */
+    //@ requires client != null;
+    //@ requires frame != null;
+    @EventHandler(eventId = TcpServer.EVENT_FRAME_RECEIVED)
+    private void eventFrameReceived(TcpServer.Client client, ByteBuffer frame) {
+        Player player = client.getAttachment(Player.class);
+
+        Log.debug("Received frame of %d bytes from %s", frame.remaining(), player.getName());
+
+        player.touch();
+        player.getProtocol().handleFrame(frame);
+    }
+
     /**
      * Handles the sendFailed event raised by the server once a packet could not be send to a
      * client.
@@ -368,6 +525,15 @@ public final class Main {
         return challenger;
     }
 
+    /**
+     * Returns the TimeoutManager instance.
+     */
+    /*@ pure */
+    //@ ensures \result != null;
+    public TimeoutManager getTimeoutManager() {
+        return timeoutManager;
+    }
+
     /**
      * Returns the TcpServer instance.
      */
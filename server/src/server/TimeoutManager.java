@@ -0,0 +1,201 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+import server.player.Player;
+import server.player.PlayerState;
+import findfour.shared.logging.Log;
+import findfour.shared.logging.LogLevel;
+import findfour.shared.utils.TimerWheel;
+
+/**
+ * Disconnects clients that do not join in time or are idle in the lobby too long, and times the
+ * moves of players in a game. All timeouts are kept in a single timer wheel, so a tick takes the
+ * same time regardless of the number of clients.
+ * <p>
+ * Every client has a single timeout, which is not rescheduled when a packet is received. The
+ * player only records the time of its last activity, and when the timeout expires it is checked
+ * whether the player really was idle, otherwise the timeout is scheduled again for the remaining
+ * time. Timeouts are in seconds, a timeout of 0 disables it.
+ * @author ciske
+ *
+ */
+public final class TimeoutManager {
+    /**
+     * The default time in seconds a client has to join after connecting.
+     */
+    public static final int DEFAULT_JOIN_TIMEOUT = 30;
+    /**
+     * The default time in seconds a player can be idle in the lobby.
+     */
+    public static final int DEFAULT_LOBBY_IDLE_TIMEOUT = 900;
+    /**
+     * The default time in seconds a player has to make a move.
+     */
+    public static final int DEFAULT_MOVE_TIMEOUT = 60;
+    /**
+     * The duration of a tick of the timer wheel in milliseconds.
+     */
+    private static final int TICK_DURATION = 100;
+    /**
+     * The number of ticks in a rotation of the timer wheel, which covers the default move timeout
+     * so most timeouts expire within a rotation.
+     */
+    private static final int WHEEL_SIZE = 1024;
+    /**
+     * The interval in seconds at which a player whose state has no timeout is checked again when
+     * the lobby idle timeout is disabled, in case the player changes state or the timeouts are
+     * changed.
+     */
+    private static final int RECHECK_INTERVAL = 60;
+
+    private final TimerWheel wheel;
+    private volatile int joinTimeout;
+    private volatile int lobbyIdleTimeout;
+    private volatile int moveTimeout;
+
+    public TimeoutManager() {
+        this.wheel = new TimerWheel(TICK_DURATION, WHEEL_SIZE);
+        this.joinTimeout = DEFAULT_JOIN_TIMEOUT;
+        this.lobbyIdleTimeout = DEFAULT_LOBBY_IDLE_TIMEOUT;
+        this.moveTimeout = DEFAULT_MOVE_TIMEOUT;
+    }
+
+    /**
+     * Starts ticking the timer wheel.
+     */
+    public void start() {
+        wheel.start("TimeoutManager-tick");
+    }
+
+    /**
+     * Stops ticking the timer wheel and cancels all timeouts.
+     */
+    public void stop() {
+        wheel.stop();
+    }
+
+    /**
+     * Starts watching a player that just connected, which is disconnected if it does not join in
+     * time or is idle in the lobby too long.
+     * @param player The player
+     */
+    //@ requires player != null && player.getState() == PlayerState.InitialConnect;
+    public void watch(Player player) {
+        schedule(player, joinTimeout > 0 ? joinTimeout : RECHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Schedules the timeout of a move, which is not scheduled if move timeouts are disabled.
+     * @param task The task which forfeits the game
+     * @return The timeout, or null if move timeouts are disabled
+     */
+    //@ requires task != null;
+    public TimerWheel.Timeout scheduleMoveTimeout(Runnable task) {
+        int timeout = moveTimeout;
+
+        if (timeout <= 0) {
+            return null;
+        }
+
+        return wheel.schedule(task, TimeUnit.SECONDS.toMillis(timeout));
+    }
+
+    /**
+     * Sets the time a client has to join after connecting, which applies to clients that connect
+     * after this call.
+     * @param seconds The timeout in seconds, or 0 to disable it
+     */
+    //@ requires seconds >= 0;
+    public void setJoinTimeout(int seconds) {
+        joinTimeout = seconds;
+    }
+
+    /*@ pure */
+    public int getJoinTimeout() {
+        return joinTimeout;
+    }
+
+    /**
+     * Sets the time a player can be idle in the lobby, which applies to a player the next time
+     * its timeout expires.
+     * @param seconds The timeout in seconds, or 0 to disable it
+     */
+    //@ requires seconds >= 0;
+    public void setLobbyIdleTimeout(int seconds) {
+        lobbyIdleTimeout = seconds;
+    }
+
+    /*@ pure */
+    public int getLobbyIdleTimeout() {
+        return lobbyIdleTimeout;
+    }
+
+    /**
+     * Sets the time a player has to make a move, which applies from the next turn.
+     * @param seconds The timeout in seconds, or 0 to disable it
+     */
+    //@ requires seconds >= 0;
+    public void setMoveTimeout(int seconds) {
+        moveTimeout = seconds;
+    }
+
+    /*@ pure */
+    public int getMoveTimeout() {
+        return moveTimeout;
+    }
+
+    private void schedule(final Player player, long delay, TimeUnit unit) {
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                check(player);
+            }
+        }, unit.toMillis(delay));
+    }
+
+    /**
+     * Checks whether a player timed out when its timeout expires, and schedules the timeout
+     * again if it did not.
+     * @param player The player
+     */
+    private void check(Player player) {
+        PlayerState state = player.getState();
+
+        // Nothing is scheduled for a player that is gone anymore.
+        if (state == PlayerState.Disconnected || !player.getClient().isConnected()) {
+            return;
+        }
+
+        int joinLimit = joinTimeout;
+        int idleLimit = lobbyIdleTimeout;
+        long now = System.nanoTime();
+        long deadline;
+
+        if (state == PlayerState.InitialConnect && joinLimit > 0) {
+            deadline = player.getConnectTime() + TimeUnit.SECONDS.toNanos(joinLimit);
+        } else if (state == PlayerState.InLobby && idleLimit > 0) {
+            deadline = player.getLastActivity() + TimeUnit.SECONDS.toNanos(idleLimit);
+        } else {
+            // The current state of the player has no timeout, but the player may return to the
+            // lobby, where it is idle since its last activity.
+            schedule(player, idleLimit > 0 ? idleLimit : RECHECK_INTERVAL, TimeUnit.SECONDS);
+            return;
+        }
+
+        if (deadline - now > 0) {
+            schedule(player, deadline - now, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        if (state == PlayerState.InitialConnect) {
+            Log.info(LogLevel.Normal, "Client from %s did not join in time",
+                    player.getClient().getHostAddress());
+        } else {
+            Log.info(LogLevel.Normal, "Client %s was idle in the lobby too long",
+                    player.getName());
+        }
+
+        player.getClient().disconnect();
+    }
+}
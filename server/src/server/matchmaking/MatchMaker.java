@@ -1,7 +1,16 @@
 package server.matchmaking;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import server.Main;
 import server.player.Player;
@@ -9,44 +18,222 @@ import server.player.PlayerState;
 import findfour.shared.logging.Log;
 import findfour.shared.logging.LogLevel;
 
+/**
+ * Pairs the players that are waiting for a game by their rating.
+ * <p>
+ * Queued players are kept in buckets of players with about the same rating, which are sorted by
+ * rating, so queueing and removing a player takes logarithmic time in the number of buckets.
+ * Players are not paired as they are queued, but every match interval, when all queued players
+ * are visited in order of their rating and neighbours are paired if their ratings are close
+ * enough. How close the ratings have to be depends on how long the players are waiting: the
+ * search window starts small and grows for as long as a player waits, so every player finds an
+ * opponent eventually.
+ * @author ciske
+ *
+ */
 public final class MatchMaker {
-    private final List<Player> queuedPlayers;
+    /**
+     * The interval in milliseconds at which queued players are paired.
+     */
+    public static final int MATCH_INTERVAL = 200;
+    /**
+     * The width of the rating range of a bucket.
+     */
+    private static final int BUCKET_WIDTH = 50;
+    /**
+     * The difference in rating a player accepts right after queueing.
+     */
+    private static final int INITIAL_WINDOW = 100;
+    /**
+     * The amount by which the accepted difference in rating grows every second a player waits.
+     */
+    private static final int WINDOW_GROWTH = 50;
+
+    private final Ratings ratings;
+    // The buckets of queued players by the rating divided by the bucket width. The players of a
+    // bucket are in the order they were queued.
+    private final TreeMap<Integer, Set<QueuedPlayer>> buckets;
+    private final Map<Player, QueuedPlayer> queuedPlayers;
+    private ScheduledExecutorService matchTimer;
 
     public MatchMaker() {
-        this.queuedPlayers = new LinkedList<Player>();
+        this.ratings = new Ratings();
+        this.buckets = new TreeMap<Integer, Set<QueuedPlayer>>();
+        this.queuedPlayers = new HashMap<Player, QueuedPlayer>();
     }
 
     public synchronized void queuePlayer(Player player) {
         player.setState(PlayerState.InQueue);
 
-        Player opponent = findMatch(player);
+        if (queuedPlayers.containsKey(player)) {
+            return;
+        }
 
-        if (opponent == null) {
-            queuedPlayers.add(player);
+        QueuedPlayer queued = new QueuedPlayer(player, ratings.getRating(player.getName()));
+        Set<QueuedPlayer> bucket = buckets.get(queued.bucket);
 
-            Log.info(LogLevel.Verbose, "Added %s to the matchmaking queue", player.getName());
-        } else {
-            Log.info(LogLevel.Verbose, "Found a match for the players %s and %s", player.getName(),
-                    opponent.getName());
+        if (bucket == null) {
+            bucket = new LinkedHashSet<QueuedPlayer>();
+            buckets.put(queued.bucket, bucket);
+        }
 
-            queuedPlayers.remove(opponent);
+        bucket.add(queued);
+        queuedPlayers.put(player, queued);
 
-            Main.INSTANCE.getRoomManager().startGame(player, opponent);
-        }
+        Log.info(LogLevel.Verbose, "Added %s with rating %d to the matchmaking queue",
+                player.getName(), queued.rating);
     }
 
     public synchronized void removeFromQueue(Player player) {
-        queuedPlayers.remove(player);
+        QueuedPlayer queued = queuedPlayers.remove(player);
+
+        if (queued != null) {
+            removeFromBucket(queued);
+        }
 
         Log.info(LogLevel.Verbose, "Removed %s from the matchmaking queue", player.getName());
     }
 
-    private Player findMatch(Player player) {
-        // Very simple match making for now. Might expand on this later.
-        if (queuedPlayers.size() != 0) {
-            return queuedPlayers.get(0);
-        } else {
-            return null;
+    /**
+     * Starts pairing the queued players every match interval.
+     */
+    public synchronized void startMatching() {
+        if (matchTimer != null) {
+            return;
+        }
+
+        matchTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MatchMaker-match");
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+        matchTimer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                match();
+            }
+        }, MATCH_INTERVAL, MATCH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops pairing the queued players.
+     */
+    public synchronized void stopMatching() {
+        if (matchTimer != null) {
+            matchTimer.shutdown();
+            matchTimer = null;
+        }
+    }
+
+    /**
+     * Pairs the queued players whose ratings are close enough, and starts their games.
+     */
+    public synchronized void match() {
+        if (queuedPlayers.size() < 2) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        List<QueuedPlayer> matched = new ArrayList<QueuedPlayer>();
+        QueuedPlayer previous = null;
+
+        // The buckets are in order of rating, so neighbours are the closest opponents and only
+        // those are compared.
+        for (Set<QueuedPlayer> bucket : buckets.values()) {
+            for (QueuedPlayer queued : bucket) {
+                // The player is removed from the queue once its disconnect is handled.
+                if (!queued.player.getClient().isConnected()) {
+                    continue;
+                }
+
+                if (previous != null && isMatch(previous, queued, now)) {
+                    matched.add(previous);
+                    matched.add(queued);
+                    previous = null;
+                } else {
+                    previous = queued;
+                }
+            }
+        }
+
+        for (int i = 0; i < matched.size(); i += 2) {
+            startGame(matched.get(i), matched.get(i + 1));
+        }
+    }
+
+    /**
+     * Returns the ratings of the players.
+     */
+    //@ ensures \result != null;
+    /*@ pure */
+    public Ratings getRatings() {
+        return ratings;
+    }
+
+    /*@ pure */
+    public synchronized int getQueueSize() {
+        return queuedPlayers.size();
+    }
+
+    /**
+     * Returns whether two players are close enough in rating to be paired. The accepted
+     * difference in rating starts at the initial window and grows every whole second waited.
+     * @param ratingA The rating of one player
+     * @param ratingB The rating of the other player
+     * @param waited The time in nanoseconds the player that waits the longest is waiting
+     */
+    //@ requires waited >= 0;
+    /*@ pure */
+    public static boolean isMatch(int ratingA, int ratingB, long waited) {
+        long window = INITIAL_WINDOW + WINDOW_GROWTH * TimeUnit.NANOSECONDS.toSeconds(waited);
+
+        return Math.abs(ratingA - ratingB) <= window;
+    }
+
+    private boolean isMatch(QueuedPlayer a, QueuedPlayer b, long now) {
+        // The player that waits the longest has the widest window, which decides.
+        return isMatch(a.rating, b.rating, now - Math.min(a.queuedSince, b.queuedSince));
+    }
+
+    private void startGame(QueuedPlayer a, QueuedPlayer b) {
+        queuedPlayers.remove(a.player);
+        queuedPlayers.remove(b.player);
+        removeFromBucket(a);
+        removeFromBucket(b);
+
+        Log.info(LogLevel.Verbose, "Found a match for the players %s (%d) and %s (%d)",
+                a.player.getName(), a.rating, b.player.getName(), b.rating);
+
+        Main.INSTANCE.getRoomManager().startGame(a.player, b.player);
+    }
+
+    private void removeFromBucket(QueuedPlayer queued) {
+        Set<QueuedPlayer> bucket = buckets.get(queued.bucket);
+
+        bucket.remove(queued);
+
+        if (bucket.isEmpty()) {
+            buckets.remove(queued.bucket);
+        }
+    }
+
+    private static final class QueuedPlayer {
+        private final Player player;
+        private final int rating;
+        private final int bucket;
+        // The value of System.nanoTime when the player was queued.
+        private final long queuedSince;
+
+        private QueuedPlayer(Player argPlayer, int argRating) {
+            this.player = argPlayer;
+            this.rating = argRating;
+            this.bucket = argRating / BUCKET_WIDTH;
+            this.queuedSince = System.nanoTime();
         }
     }
 }
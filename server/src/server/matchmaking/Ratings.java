@@ -0,0 +1,87 @@
+package server.matchmaking;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import findfour.shared.logging.Log;
+import findfour.shared.logging.LogLevel;
+
+/**
+ * The Elo ratings of players, which are kept by name for as long as the server runs, so a player
+ * keeps its rating when it reconnects. A player that did not play yet has the initial rating.
+ * @author ciske
+ *
+ */
+public final class Ratings {
+    /**
+     * The rating of a player that did not play yet.
+     */
+    public static final int INITIAL_RATING = 1500;
+    /**
+     * The maximum change of a rating by a single game.
+     */
+    private static final double K_FACTOR = 32;
+    /**
+     * The difference in rating at which the stronger player is expected to score ten times as
+     * much as the weaker player.
+     */
+    private static final double SCALE = 400;
+
+    private final ConcurrentMap<String, Integer> ratings;
+
+    public Ratings() {
+        this.ratings = new ConcurrentHashMap<String, Integer>();
+    }
+
+    /**
+     * Returns the rating of a player.
+     * @param name The name of the player
+     */
+    //@ requires name != null;
+    /*@ pure */
+    public int getRating(String name) {
+        Integer rating = ratings.get(name);
+
+        return rating == null ? INITIAL_RATING : rating;
+    }
+
+    /**
+     * Updates the ratings of two players after a game that one of them won.
+     * @param winner The name of the winner
+     * @param loser The name of the loser
+     */
+    //@ requires winner != null && loser != null;
+    public void recordWin(String winner, String loser) {
+        recordResult(winner, loser, 1);
+    }
+
+    /**
+     * Updates the ratings of two players after a game that ended in a draw.
+     * @param playerA The name of one player
+     * @param playerB The name of the other player
+     */
+    //@ requires playerA != null && playerB != null;
+    public void recordDraw(String playerA, String playerB) {
+        recordResult(playerA, playerB, 0.5);
+    }
+
+    /**
+     * Updates the ratings of two players after a game, both ratings change by the same amount.
+     * The update is synchronized, so the updates of two games of a player can not interleave.
+     * @param playerA The name of one player
+     * @param playerB The name of the other player
+     * @param scoreA The score of the first player: 1 for a win, 0.5 for a draw, 0 for a loss
+     */
+    private synchronized void recordResult(String playerA, String playerB, double scoreA) {
+        int ratingA = getRating(playerA);
+        int ratingB = getRating(playerB);
+        double expectedA = 1 / (1 + Math.pow(10, (ratingB - ratingA) / SCALE));
+        int change = (int) Math.round(K_FACTOR * (scoreA - expectedA));
+
+        ratings.put(playerA, ratingA + change);
+        ratings.put(playerB, ratingB - change);
+
+        Log.info(LogLevel.Verbose, "Rating of %s is now %d, rating of %s is now %d", playerA,
+                ratingA + change, playerB, ratingB - change);
+    }
+}
@@ -0,0 +1,599 @@
+package server.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import server.Constants;
+import server.IllegalInvokeException;
+import server.Main;
+import server.player.Player;
+import server.player.PlayerState;
+import server.rooms.GameRoom;
+import findfour.shared.logging.Log;
+import findfour.shared.logging.LogLevel;
+import findfour.shared.network.FrameReader;
+import findfour.shared.network.FrameWriter;
+import findfour.shared.network.MalformedFrameException;
+
+/**
+ * The implementation of our binary protocol, which is used after the handshake by clients that
+ * specified the Binary extension. The handshake itself is the same as in the default protocol,
+ * after the accept packet both sides send binary frames (see FrameWriter) instead of text
+ * packets.
+ * <p>
+ * Players are referred to by their id instead of their name. Before the first frame which refers
+ * to a player, the client is sent a name frame that maps the id to the name. The client keeps
+ * these names until the player goes offline, so the name is only sent once.
+ * <p>
+ * The frames that are sent to a number of players only contain ids, so all recipients using this
+ * protocol share the same encoded frame.
+ * @author ciske
+ *
+ */
+public final class BinaryProtocol extends Protocol {
+    // Frames sent by the client.
+    private static final int OP_READY = 1;
+    private static final int OP_DO_MOVE = 2;
+    private static final int OP_LOCAL_CHAT = 3;
+    private static final int OP_GLOBAL_CHAT = 4;
+    private static final int OP_CHALLENGE = 5;
+    private static final int OP_CHALLENGE_RESPONSE = 6;
+    private static final int OP_ERROR = 7;
+    // Frames sent by the server.
+    private static final int OP_NAME = 16;
+    private static final int OP_START_GAME = 17;
+    private static final int OP_REQUEST_MOVE = 18;
+    private static final int OP_DONE_MOVE = 19;
+    private static final int OP_GAME_WON = 20;
+    private static final int OP_GAME_DRAW = 21;
+    private static final int OP_STATE_CHANGE = 22;
+    private static final int OP_MESSAGE = 23;
+    private static final int OP_CHALLENGE_NOTIFY = 24;
+    private static final int OP_SERVER_ERROR = 25;
+    private static final int OP_OPPONENT_DISCONNECTED = 26;
+    private static final int OP_LOBBY_SNAPSHOT = 27;
+    // The error codes are those of the default protocol.
+    private static final int ERR_INVALID_MOVE = 2;
+    private static final int ERR_CANNOT_CHALLENGE = 5;
+    private static final int ERR_INVALID_CHAT = 6;
+    private static final int ERR_INVALID_CMD = 7;
+    private static final int ERR_INVALID_PARAMETER = 8;
+    private static final int ERR_SYNTAX = 9;
+    // The states are sent as their ordinal.
+    private static final int STATE_INGAME = 0;
+    private static final int STATE_INLOBBY = 1;
+    private static final int STATE_INQUEUE = 2;
+    private static final int STATE_DISCONNECTED = 3;
+
+    private static final int UNKNOWN_ID = -1;
+    private static final int MAX_COLUMN = 6;
+    private static final int OP_COUNT = OP_ERROR + 1;
+    private static final int INITIAL_NAMES_CAPACITY = 16;
+
+    private final boolean hasChatExt;
+    private final boolean hasLobbyExt;
+    private final boolean hasChallengeExt;
+    private final StateCache stateCache;
+    private final FrameReader reader;
+    // Whether the client may send a frame, indexed by its opcode. Frames of extensions the client
+    // did not specify are handled like unknown frames.
+    private final boolean[] enabledOps;
+    // Whether the client received a snapshot, after that only differences with snapshots are sent.
+    private boolean receivedSnapshot;
+    // The names the client knows, indexed by id, which mirrors the table of the client. Guarded by
+    // this instance, as frames are sent to the client by the threads of other players.
+    private String[] knownNames;
+
+    /**
+     * Creates a new instance of the binary protocol.
+     * @param player The player which owns this protocol instance
+     * @param extensions The extensions the player supports
+     */
+    //@ requires player != null;
+    //@ requires extensions != null;
+    public BinaryProtocol(Player player, String[] extensions) {
+        super(player);
+
+        this.hasChatExt = isExtensionSupported(extensions, Constants.EXT_CHAT);
+        this.hasLobbyExt = isExtensionSupported(extensions, Constants.EXT_LOBBY);
+        this.hasChallengeExt = isExtensionSupported(extensions, Constants.EXT_CHALLENGE);
+        this.stateCache = new StateCache();
+        this.reader = new FrameReader();
+        this.enabledOps = new boolean[OP_COUNT];
+        this.knownNames = new String[INITIAL_NAMES_CAPACITY];
+
+        enableOps();
+    }
+
+    @Override
+    public void sendStartGame(Broadcast broadcast, String startingPlayer, String otherPlayer) {
+        int startingId = intern(startingPlayer);
+        int otherId = intern(otherPlayer);
+
+        if (startingId != UNKNOWN_ID && otherId != UNKNOWN_ID && !joinBroadcast(broadcast)) {
+            send(broadcast, new FrameWriter(OP_START_GAME).writeVarInt(startingId)
+                    .writeVarInt(otherId));
+        }
+    }
+
+    @Override
+    public void sendRequestMove(Broadcast broadcast, String playerName) {
+        int id = intern(playerName);
+
+        if (id != UNKNOWN_ID && !joinBroadcast(broadcast)) {
+            send(broadcast, new FrameWriter(OP_REQUEST_MOVE).writeVarInt(id));
+        }
+    }
+
+    @Override
+    public void sendNotYourMove() {
+        sendError(ERR_INVALID_CMD, "Not your move");
+    }
+
+    @Override
+    public void sendInvalidMove() {
+        sendError(ERR_INVALID_MOVE, "Move is invalid");
+    }
+
+    //@ requires column >= 0 && column <= 6;
+    @Override
+    public void sendDoneMove(Broadcast broadcast, String playerName, int column) {
+        int id = intern(playerName);
+
+        if (id != UNKNOWN_ID && !joinBroadcast(broadcast)) {
+            send(broadcast, new FrameWriter(OP_DONE_MOVE).writeVarInt(id).writeVarInt(column));
+        }
+    }
+
+    @Override
+    public void sendGameWon(Broadcast broadcast, String winner) {
+        int id = intern(winner);
+
+        if (id != UNKNOWN_ID && !joinBroadcast(broadcast)) {
+            send(broadcast, new FrameWriter(OP_GAME_WON).writeVarInt(id));
+        }
+    }
+
+    @Override
+    public void sendGameDraw(Broadcast broadcast) {
+        if (!joinBroadcast(broadcast)) {
+            send(broadcast, new FrameWriter(OP_GAME_DRAW));
+        }
+    }
+
+    @Override
+    public void sendOpponentDisconnected(Broadcast broadcast, String name) {
+        int id = intern(name);
+
+        if (id != UNKNOWN_ID && !joinBroadcast(broadcast)) {
+            send(broadcast, new FrameWriter(OP_OPPONENT_DISCONNECTED).writeVarInt(id));
+        }
+    }
+
+    /**
+     * Sends the state changes that differ from the last state that was sent for each player, as a
+     * single frame. The client forgets the name of a player once it is sent that the player is
+     * offline.
+     * @param changedPlayers The players that had a state change
+     * @param states The new states of the players
+     * @param count The number of changes
+     */
+    //@ requires changedPlayers != null && states != null;
+    //@ requires count <= changedPlayers.length && count <= states.length;
+    @Override
+    public void sendStateChanges(Player[] changedPlayers, PlayerState[] states, int count) {
+        if (!hasLobbyExt) {
+            return;
+        }
+
+        int[] changes = new int[count];
+        int changeCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            Player p = changedPlayers[i];
+
+            if (p != player && stateCache.differs(p.getId(), states[i])) {
+                stateCache.update(p.getId(), states[i]);
+                intern(p);
+                changes[changeCount++] = i;
+            }
+        }
+
+        if (changeCount > 0) {
+            FrameWriter frame = new FrameWriter(OP_STATE_CHANGE).writeVarInt(changeCount);
+
+            for (int i = 0; i < changeCount; i++) {
+                frame.writeVarInt(changedPlayers[changes[i]].getId());
+                frame.writeVarInt(toStateCode(states[changes[i]]));
+            }
+
+            send(frame);
+        }
+    }
+
+    /**
+     * Sends the states of all players as a single frame the first time the client enters the
+     * lobby, which contains the names of the players as well. The frame is encoded once per
+     * snapshot and shared by all clients entering the lobby, so it contains the client itself
+     * too. After that only the states that changed since they were last sent are sent.
+     * @param snapshot The states of all players
+     */
+    //@ requires snapshot != null;
+    @Override
+    public void sendClientStates(LobbySnapshot snapshot) {
+        if (!hasLobbyExt) {
+            return;
+        }
+
+        if (receivedSnapshot) {
+            sendStateChanges(snapshot.getPlayers(), snapshot.getStates(), snapshot.getSize());
+            return;
+        }
+
+        receivedSnapshot = true;
+
+        LobbySnapshot.Encoding encoding = snapshot.getEncoding(getName());
+
+        if (encoding == null) {
+            FrameWriter frame = new FrameWriter(OP_LOBBY_SNAPSHOT).writeVarInt(snapshot.getSize());
+
+            for (int i = 0; i < snapshot.getSize(); i++) {
+                Player p = snapshot.getPlayer(i);
+
+                frame.writeVarInt(p.getId()).writeVarInt(toStateCode(snapshot.getState(i)))
+                        .writeString(p.getName());
+            }
+
+            encoding = snapshot.setEncoding(getName(), frame.toFrame(), null);
+        }
+
+        // The names in the snapshot replace the names the client knew.
+        synchronized (this) {
+            Arrays.fill(knownNames, null);
+
+            for (int i = 0; i < snapshot.getSize(); i++) {
+                Player p = snapshot.getPlayer(i);
+
+                ensureNamesCapacity(p.getId());
+                knownNames[p.getId()] = p.getName();
+            }
+
+            player.getClient().send(encoding.getData());
+        }
+
+        for (int i = 0; i < snapshot.getSize(); i++) {
+            if (snapshot.getPlayer(i) != player) {
+                stateCache.update(snapshot.getPlayer(i).getId(), snapshot.getState(i));
+            }
+        }
+    }
+
+    /**
+     * Forgets the state and name of a player that went offline, so its id can be given to another
+     * player. The next frame referring to that player sends its name again.
+     * @param other The player that went offline
+     */
+    //@ requires other != null;
+    @Override
+    public void forgetPlayer(Player other) {
+        stateCache.remove(other.getId());
+
+        synchronized (this) {
+            if (other.getId() < knownNames.length) {
+                knownNames[other.getId()] = null;
+            }
+        }
+    }
+
+    @Override
+    public void sendGlobalChat(Broadcast broadcast, String playerName, String message) {
+        if (hasChatExt) {
+            sendMessage(broadcast, playerName, true, message);
+        }
+    }
+
+    @Override
+    public void sendLocalChat(Broadcast broadcast, String playerName, String message) {
+        if (hasChatExt) {
+            sendMessage(broadcast, playerName, false, message);
+        }
+    }
+
+    //@ requires hasChallengeExt == true;
+    @Override
+    public void sendChallengeNotify(String playerName) {
+        int id = intern(playerName);
+
+        if (id != UNKNOWN_ID) {
+            send(new FrameWriter(OP_CHALLENGE_NOTIFY).writeVarInt(id));
+        }
+    }
+
+    /**
+     * Should never be called in this Protocol implementation.
+     */
+    @Override
+    public void sendAccept() {
+        throw new IllegalInvokeException();
+    }
+
+    @Override
+    public void sendCannotChallenge(String reason) {
+        sendError(ERR_CANNOT_CHALLENGE, reason);
+    }
+
+    @Override
+    public void sendChallengeFailed(String reason) {
+        sendError(ERR_INVALID_PARAMETER, reason);
+    }
+
+    /**
+     * Should never be called in this Protocol implementation, the client only sends frames after
+     * the handshake.
+     */
+    @Override
+    public void handlePacket(String packet) {
+        throw new IllegalInvokeException();
+    }
+
+    /**
+     * Handles a frame sent by the client.
+     * @param frame The payload of the frame
+     */
+    //@ requires frame != null;
+    @Override
+    public void handleFrame(ByteBuffer frame) {
+        try {
+            int opcode = reader.read(frame);
+
+            if (opcode >= enabledOps.length || !enabledOps[opcode]) {
+                sendError(ERR_INVALID_CMD, "Unknown frame");
+                return;
+            }
+
+            switch (opcode) {
+                case OP_READY:
+                    handleReady();
+                    break;
+
+                case OP_DO_MOVE:
+                    handleDoMove();
+                    break;
+
+                case OP_LOCAL_CHAT:
+                    handleLocalChat();
+                    break;
+
+                case OP_GLOBAL_CHAT:
+                    handleGlobalChat();
+                    break;
+
+                case OP_CHALLENGE:
+                    handleChallenge();
+                    break;
+
+                case OP_CHALLENGE_RESPONSE:
+                    handleChallengeResponse();
+                    break;
+
+                default:
+                    handleError();
+                    break;
+            }
+        } catch (MalformedFrameException e) {
+            sendError(ERR_SYNTAX, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean supportsChallenging() {
+        return hasChallengeExt;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    private void enableOps() {
+        enabledOps[OP_READY] = true;
+        enabledOps[OP_DO_MOVE] = true;
+        enabledOps[OP_ERROR] = true;
+        enabledOps[OP_LOCAL_CHAT] = hasChatExt;
+        enabledOps[OP_GLOBAL_CHAT] = hasChatExt;
+        enabledOps[OP_CHALLENGE] = hasChallengeExt;
+        enabledOps[OP_CHALLENGE_RESPONSE] = hasChallengeExt;
+    }
+
+    private void handleReady() {
+        if (player.getState() == PlayerState.InLobby) {
+            Main.INSTANCE.getMatchMaker().queuePlayer(player);
+        } else {
+            sendError(ERR_INVALID_CMD, "You must be in the lobby state");
+        }
+    }
+
+    private void handleDoMove() {
+        int column = reader.readVarInt();
+
+        if (player.getState() != PlayerState.InGame) {
+            sendError(ERR_INVALID_CMD, "You must be in the game state");
+        } else if (column > MAX_COLUMN) {
+            sendError(ERR_INVALID_PARAMETER, "col");
+        } else {
+            GameRoom room = (GameRoom) player.getRoom();
+
+            room.handleMove(player, column);
+        }
+    }
+
+    private void handleLocalChat() {
+        String message = reader.readString();
+
+        if (isValidMessage(message, 0)) {
+            player.getRoom().broadcastChat(player, message);
+        } else {
+            sendError(ERR_INVALID_CHAT, "Invalid message");
+        }
+    }
+
+    private void handleGlobalChat() {
+        String message = reader.readString();
+
+        if (isValidMessage(message, 0)) {
+            String playerName = player.getName();
+
+            Log.info(LogLevel.Verbose, "[Global chat] %s: %s", playerName, message);
+
+            Broadcast broadcast = new Broadcast();
+
+            for (Player p : Main.INSTANCE.getPlayerManager().getAll()) {
+                if (p != player) {
+                    p.getProtocol().sendGlobalChat(broadcast, playerName, message);
+                }
+            }
+
+            broadcast.send();
+        } else {
+            sendError(ERR_INVALID_CHAT, "Invalid message");
+        }
+    }
+
+    private void handleChallenge() {
+        String name = getKnownName(reader.readVarInt());
+
+        if (player.getState() != PlayerState.InLobby) {
+            sendError(ERR_INVALID_CMD, "You must be in the lobby state");
+        } else if (name == null) {
+            sendCannotChallenge("Opponent does not exist");
+        } else {
+            Main.INSTANCE.getChallenger().challenge(player, name);
+        }
+    }
+
+    private void handleChallengeResponse() {
+        String name = getKnownName(reader.readVarInt());
+        boolean answer = reader.readBoolean();
+
+        if (player.getState() != PlayerState.InLobby) {
+            sendError(ERR_INVALID_CMD, "You must be in the lobby state");
+        } else if (name == null
+                || Main.INSTANCE.getPlayerManager().getIfExists(name) == null) {
+            sendChallengeFailed("Unknown challenger");
+        } else {
+            Main.INSTANCE.getChallenger().handleChallengeResponse(player, name, answer);
+        }
+    }
+
+    private void handleError() {
+        int code = reader.readVarInt();
+        String message = reader.readString();
+
+        Log.warning(LogLevel.Minimal, "Client %s reported an error: %s (%03d)", player.getName(),
+                message, code);
+    }
+
+    /**
+     * Returns the id of a player to send to the client, sending the name of the player first if
+     * the client does not know it yet.
+     * @param name The name of the player
+     * @return The id, or UNKNOWN_ID if the player is offline and the client never knew it, in
+     * which case the frame referring to the player should not be sent
+     */
+    //@ requires name != null;
+    private int intern(String name) {
+        Player p = Main.INSTANCE.getPlayerManager().getIfExists(name);
+
+        if (p != null) {
+            return intern(p);
+        }
+
+        // The player is going offline, which is only sent to clients that know it.
+        synchronized (this) {
+            for (int id = 0; id < knownNames.length; id++) {
+                if (name.equals(knownNames[id])) {
+                    return id;
+                }
+            }
+        }
+
+        return UNKNOWN_ID;
+    }
+
+    //@ requires p != null;
+    private synchronized int intern(Player p) {
+        int id = p.getId();
+        String name = p.getName();
+
+        ensureNamesCapacity(id);
+
+        if (!name.equals(knownNames[id])) {
+            knownNames[id] = name;
+            send(new FrameWriter(OP_NAME).writeVarInt(id).writeString(name));
+        }
+
+        return id;
+    }
+
+    private void ensureNamesCapacity(int id) {
+        if (id >= knownNames.length) {
+            knownNames = Arrays.copyOf(knownNames, Math.max(knownNames.length * 2, id + 1));
+        }
+    }
+
+    private synchronized String getKnownName(int id) {
+        return id < knownNames.length ? knownNames[id] : null;
+    }
+
+    private void sendMessage(Broadcast broadcast, String playerName, boolean global,
+            String message) {
+        int id = intern(playerName);
+
+        if (id != UNKNOWN_ID && !joinBroadcast(broadcast)) {
+            send(broadcast, new FrameWriter(OP_MESSAGE).writeVarInt(id).writeBoolean(global)
+                    .writeString(message));
+        }
+    }
+
+    private void sendError(int code, String message) {
+        send(new FrameWriter(OP_SERVER_ERROR).writeVarInt(code).writeString(message));
+    }
+
+    private void send(FrameWriter frame) {
+        player.getClient().send(frame.toFrame());
+    }
+
+    /**
+     * Adds this player as recipient of a broadcast if the frame has already been encoded by
+     * another recipient using this protocol.
+     * @param broadcast The broadcast
+     * @return Whether the player was added, if not the frame has to be encoded with send
+     */
+    private boolean joinBroadcast(Broadcast broadcast) {
+        if (!broadcast.isEncoded(getName())) {
+            return false;
+        }
+
+        broadcast.addRecipient(getName(), player.getClient());
+
+        return true;
+    }
+
+    //@ requires !broadcast.isEncoded(getName());
+    private void send(Broadcast broadcast, FrameWriter frame) {
+        broadcast.setEncoded(getName(), frame.toFrame());
+        broadcast.addRecipient(getName(), player.getClient());
+    }
+
+    private static int toStateCode(PlayerState state) {
+        if (state == PlayerState.InGame) {
+            return STATE_INGAME;
+        } else if (state == PlayerState.InLobby) {
+            return STATE_INLOBBY;
+        } else if (state == PlayerState.InQueue) {
+            return STATE_INQUEUE;
+        }
+
+        return STATE_DISCONNECTED;
+    }
+}
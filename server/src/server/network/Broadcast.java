@@ -0,0 +1,90 @@
+package server.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import server.Main;
+import findfour.shared.network.TcpServer;
+
+/**
+ * A packet which is sent to a number of players. Players using the same protocol receive the
+ * exact same bytes, so the packet is only formatted and encoded once for each protocol and the
+ * encoded packet is shared by all of its recipients.
+ * <p>
+ * A broadcast is passed to the send method of the protocol of every recipient, which adds the
+ * player as recipient if the packet applies to it. Calling send then sends the packet to all
+ * recipients.
+ * @author ciske
+ *
+ */
+public final class Broadcast {
+    // The packets per protocol. There are only a few protocols, so a list is searched.
+    private final List<Packet> packets;
+
+    public Broadcast() {
+        this.packets = new ArrayList<Packet>(1);
+    }
+
+    /**
+     * Sends the packet to all recipients that have been added.
+     */
+    public void send() {
+        TcpServer server = Main.INSTANCE.getServer();
+
+        for (Packet packet : packets) {
+            server.broadcast(packet.data, packet.recipients);
+        }
+    }
+
+    /**
+     * Returns whether the packet has been encoded for a protocol.
+     * @param protocolName The name of the protocol
+     */
+    /*@ pure */
+    boolean isEncoded(String protocolName) {
+        return findPacket(protocolName) != null;
+    }
+
+    /**
+     * Sets the encoded packet for a protocol.
+     * @param protocolName The name of the protocol
+     * @param data The packet as encoded by TcpServer.encode
+     */
+    //@ requires !isEncoded(protocolName);
+    void setEncoded(String protocolName, ByteBuffer data) {
+        packets.add(new Packet(protocolName, data));
+    }
+
+    /**
+     * Adds a recipient of the packet.
+     * @param protocolName The name of the protocol the recipient uses
+     * @param client The client of the recipient
+     */
+    //@ requires isEncoded(protocolName);
+    void addRecipient(String protocolName, TcpServer.Client client) {
+        findPacket(protocolName).recipients.add(client);
+    }
+
+    private Packet findPacket(String protocolName) {
+        for (Packet packet : packets) {
+            if (packet.protocolName.equals(protocolName)) {
+                return packet;
+            }
+        }
+
+        return null;
+    }
+
+    private static final class Packet {
+        private final String protocolName;
+        private final ByteBuffer data;
+        private final List<TcpServer.Client> recipients;
+
+        Packet(String argProtocolName, ByteBuffer argData) {
+            this.protocolName = argProtocolName;
+            this.data = argData;
+            this.recipients = new ArrayList<TcpServer.Client>();
+        }
+    }
+}
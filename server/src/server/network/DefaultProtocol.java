@@ -1,5 +1,9 @@
 package server.network;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import server.Constants;
 import server.IllegalInvokeException;
 import server.Main;
@@ -9,7 +13,8 @@ import server.player.PlayerState;
 import server.rooms.GameRoom;
 import findfour.shared.logging.Log;
 import findfour.shared.logging.LogLevel;
-import findfour.shared.utils.StringUtils;
+import findfour.shared.network.TcpServer;
+import findfour.shared.utils.CommandTable;
 
 /**
  * The implementation of the default protocol specified within the work-group INF-3.
@@ -41,12 +46,21 @@ public final class DefaultProtocol extends Protocol {
     private static final String STATE_INLOBBY = "lobby";
     private static final String STATE_INQUEUE = "lobby_ready";
     private static final String STATE_DISCONNECTED = "offline";
+    private static final int ID_READY = 0;
+    private static final int ID_DO_MOVE = 1;
+    private static final int ID_ERROR = 2;
+    private static final int ID_LOCAL_CHAT = 3;
+    private static final int ID_GLOBAL_CHAT = 4;
+    private static final int ID_CHALLENGE = 5;
+    private static final int ID_CHALLENGE_RESPONSE = 6;
 
-    private final String[] supportedExtensions;
     private final boolean hasChatExt;
     private final boolean hasLobbyExt;
     private final boolean hasChallengeExt;
     private final StateCache stateCache;
+    private final CommandTable commands;
+    // Whether the client received a snapshot, after that only differences with snapshots are sent.
+    private boolean receivedSnapshot;
 
     /**
      * Creates a new instance of the default protocol.
@@ -58,15 +72,18 @@ public final class DefaultProtocol extends Protocol {
     public DefaultProtocol(Player player, String[] extensions) {
         super(player);
 
-        this.supportedExtensions = extensions;
-        this.hasChatExt = isExtensionSupported(Constants.EXT_CHAT);
-        this.hasLobbyExt = isExtensionSupported(Constants.EXT_LOBBY);
-        this.hasChallengeExt = isExtensionSupported(Constants.EXT_CHALLENGE);
+        this.hasChatExt = isExtensionSupported(extensions, Constants.EXT_CHAT);
+        this.hasLobbyExt = isExtensionSupported(extensions, Constants.EXT_LOBBY);
+        this.hasChallengeExt = isExtensionSupported(extensions, Constants.EXT_CHALLENGE);
         this.stateCache = new StateCache();
+        this.commands = new CommandTable();
+
+        registerCommands();
     }
 
     /**
      * Send the startGame command to the client to signal a new game has been started.
+     * @param broadcast The broadcast to add the client to
      * @param startingPlayer the name of the starting player
      * @param otherPlayer the name of the other player
      */
@@ -74,18 +91,20 @@ public final class DefaultProtocol extends Protocol {
     //@ requires otherPlayer != null;
     //@ requires startingPlayer != otherPlayer;
     @Override
-    public void sendStartGame(String startingPlayer, String otherPlayer) {
-        send("%s %s %s", CMD_START_GAME, startingPlayer, otherPlayer);
+    public void sendStartGame(Broadcast broadcast, String startingPlayer,
+            String otherPlayer) {
+        send(broadcast, "%s %s %s", CMD_START_GAME, startingPlayer, otherPlayer);
     }
 
     /**
      * Send the requestMove command to the client to signal which player has to make the next move.
+     * @param broadcast The broadcast to add the client to
      * @param playerName the name of the player which has to make the next move
      */
     //@ requires playerName != null;
     @Override
-    public void sendRequestMove(String playerName) {
-        send("%s %s", CMD_REQUEST_MOVE, playerName);
+    public void sendRequestMove(Broadcast broadcast, String playerName) {
+        send(broadcast, "%s %s", CMD_REQUEST_MOVE, playerName);
     }
 
     /**
@@ -107,133 +126,176 @@ public final class DefaultProtocol extends Protocol {
 
     /**
      * Send the doneMove command to the client to signal a player has performed a move.
+     * @param broadcast The broadcast to add the client to
      * @param playerName The name of the player which just made a move
      * @param column The column in which the player made his move
      */
     //@ requires playerName != null;
     //@ requires column >= 0 && column <= 6;
     @Override
-    public void sendDoneMove(String playerName, int column) {
-        send("%s %s %s", CMD_DONE_MOVE, playerName, column);
+    public void sendDoneMove(Broadcast broadcast, String playerName, int column) {
+        send(broadcast, "%s %s %s", CMD_DONE_MOVE, playerName, column);
     }
 
     /**
      * Send the gameWon command to the client to signal the game has been won by a player.
+     * @param broadcast The broadcast to add the client to
      * @param winner The name of the winning player
      */
     //@ requires winner != null;
     @Override
-    public void sendGameWon(String winner) {
-        send("%s %s", CMD_GAME_END, winner);
+    public void sendGameWon(Broadcast broadcast, String winner) {
+        send(broadcast, "%s %s", CMD_GAME_END, winner);
     }
 
     /**
      * Send the gameDraw command to the client to signal the game has has ended in a draw.
+     * @param broadcast The broadcast to add the client to
      */
     @Override
-    public void sendGameDraw() {
-        send(CMD_GAME_END);
+    public void sendGameDraw(Broadcast broadcast) {
+        send(broadcast, CMD_GAME_END);
     }
 
     /**
      * Send the opponentDisconnected command to the client to signal that one of the players in the
      * current game has disconnected.
+     * @param broadcast The broadcast to add the client to
      * @param name The name of the player that disconnected
      */
     //@ requires name != null;
     @Override
-    public void sendOpponentDisconnected(String name) {
-        sendErr(ERR_PLAYER_DISCONNECTED, name);
+    public void sendOpponentDisconnected(Broadcast broadcast, String name) {
+        send(broadcast, "%s %s", ERR_PLAYER_DISCONNECTED, name);
     }
 
     /**
-     * Send the stateChange command to the client to signal that the state of another player has
-     * changed.
-     * @param playerName The name of the player that just had the state change
-     * @param state The new state of the player
+     * Send the stateChange commands to the client to signal that the states of other players have
+     * changed. All changes that differ from what was sent before are sent as a single packet.
+     * @param changedPlayers The players that had a state change
+     * @param states The new states of the players
+     * @param count The number of changes
      */
-    //@ requires playerName != null;
-    //@ requires state != null && state != PlayerState.InitialConnect;
-    //@ ensures stateCache.differs(playerName, state) == false;
+    //@ requires changedPlayers != null && states != null;
+    //@ requires count <= changedPlayers.length && count <= states.length;
     @Override
-    public void sendStateChange(String playerName, PlayerState state) {
+    public void sendStateChanges(Player[] changedPlayers, PlayerState[] states, int count) {
         // Only send if the client supports the lobby extension.
         if (!hasLobbyExt) {
             return;
         }
 
-        if (stateCache.differs(playerName, state)) {
-            stateCache.update(playerName, state);
+        List<ByteBuffer> lines = new ArrayList<ByteBuffer>(count);
 
-            String stateString = null;
+        for (int i = 0; i < count; i++) {
+            Player p = changedPlayers[i];
 
-            if (state == PlayerState.InGame) {
-                stateString = STATE_INGAME;
-            } else if (state == PlayerState.InLobby) {
-                stateString = STATE_INLOBBY;
-            } else if (state == PlayerState.InQueue) {
-                stateString = STATE_INQUEUE;
-            } else if (state == PlayerState.Disconnected) {
-                stateString = STATE_DISCONNECTED;
+            if (p != player && stateCache.differs(p.getId(), states[i])) {
+                stateCache.update(p.getId(), states[i]);
+                lines.add(encodeStateChange(p, states[i]));
             }
+        }
 
-            send("%s %s %s", CMD_STATE_CHANGE, playerName, stateString);
+        if (!lines.isEmpty()) {
+            player.getClient().send(concat(lines, null));
         }
     }
 
     /**
-     * Send all the stateChange commands to the client to build an initial list of the states and
-     * names of other clients.
+     * Send the stateChange commands of all other clients to the client to build an initial list
+     * of the states and names of other clients. The first time, the commands of all clients are
+     * sent, which are encoded once per snapshot and shared by all clients entering the lobby.
+     * After that only the states that changed since they were last sent are sent.
+     * @param snapshot The states of all players
      */
+    //@ requires snapshot != null;
     @Override
-    public void sendClientStates() {
+    public void sendClientStates(LobbySnapshot snapshot) {
         if (!hasLobbyExt) {
             return;
         }
 
-        // If a client enters the lobby spam him with the current state of all other clients.
-        // This method is FAR from pretty, but it *sort of* works. A cache is used to perform delta
-        // checks to eliminate the number of updates that actually have to be send.
-        for (Player p : Main.INSTANCE.getPlayerManager().getAllBut(player)) {
-            String name = p.getName();
-            PlayerState state = p.getState();
+        if (receivedSnapshot) {
+            sendStateChanges(snapshot.getPlayers(), snapshot.getStates(), snapshot.getSize());
+            return;
+        }
+
+        receivedSnapshot = true;
+
+        LobbySnapshot.Encoding encoding = snapshot.getEncoding(getName());
 
-            if (stateCache.differs(name, state)) {
-                sendStateChange(name, state);
+        if (encoding == null) {
+            List<ByteBuffer> lines = new ArrayList<ByteBuffer>(snapshot.getSize());
+            int[] entryEnds = new int[snapshot.getSize()];
+
+            for (int i = 0; i < snapshot.getSize(); i++) {
+                lines.add(encodeStateChange(snapshot.getPlayer(i), snapshot.getState(i)));
+            }
+
+            encoding = snapshot.setEncoding(getName(), concat(lines, entryEnds), entryEnds);
+        }
+
+        int ownIndex = snapshot.indexOf(player);
+
+        if (ownIndex == -1) {
+            player.getClient().send(encoding.getData());
+        } else {
+            for (ByteBuffer part : encoding.getDataWithout(ownIndex)) {
+                if (part.hasRemaining()) {
+                    player.getClient().send(part);
+                }
+            }
+        }
+
+        for (int i = 0; i < snapshot.getSize(); i++) {
+            if (i != ownIndex) {
+                stateCache.update(snapshot.getPlayer(i).getId(), snapshot.getState(i));
             }
         }
     }
 
+    /**
+     * Forgets the state that was sent for a player that went offline.
+     * @param other The player that went offline
+     */
+    //@ requires other != null;
+    @Override
+    public void forgetPlayer(Player other) {
+        stateCache.remove(other.getId());
+    }
+
     /**
      * Send a global chat message to the client.
+     * @param broadcast The broadcast to add the client to
      * @param playerName The player who send the chat message
      * @param message The content of the chat message
      */
     //@ requires playerName != null;
     //@ requires message != null;
     @Override
-    public void sendGlobalChat(String playerName, String message) {
+    public void sendGlobalChat(Broadcast broadcast, String playerName, String message) {
         if (!hasChatExt) {
             return;
         }
 
-        send("%s %s [global]%s", CMD_CHAT, playerName, message);
+        send(broadcast, "%s %s [global]%s", CMD_CHAT, playerName, message);
     }
 
     /**
      * Send a local chat message to the client.
+     * @param broadcast The broadcast to add the client to
      * @param playerName The player who send the chat message
      * @param message The content of the chat message
      */
     //@ requires playerName != null;
     //@ requires message != null;
     @Override
-    public void sendLocalChat(String playerName, String message) {
+    public void sendLocalChat(Broadcast broadcast, String playerName, String message) {
         if (!hasChatExt) {
             return;
         }
 
-        send("%s %s [local]%s", CMD_CHAT, playerName, message);
+        send(broadcast, "%s %s [local]%s", CMD_CHAT, playerName, message);
     }
 
     /**
@@ -283,36 +345,37 @@ public final class DefaultProtocol extends Protocol {
     //@ requires packet != null;
     @Override
     public void handlePacket(String packet) {
-        String command = StringUtils.extractCommand(packet, DELIMITER);
-        String[] args = StringUtils.extractArgs(packet, DELIMITER, false);
+        tokenizer.tokenize(packet);
 
-        switch (command) {
-            case CMD_READY:
+        // Commands of extensions the client did not specify are not registered, and are handled
+        // like any other unknown command.
+        switch (commands.lookup(tokenizer)) {
+            case ID_READY:
                 handleReady();
                 break;
 
-            case CMD_DO_MOVE:
-                handleDoMove(args);
+            case ID_DO_MOVE:
+                handleDoMove();
                 break;
 
-            case CMD_LOCAL_CHAT:
+            case ID_LOCAL_CHAT:
                 handleLocalChat(packet);
                 break;
 
-            case CMD_GLOBAL_CHAT:
+            case ID_GLOBAL_CHAT:
                 handleGlobalChat(packet);
                 break;
 
-            case CMD_CHALLENGE:
-                handleChallenge(args);
+            case ID_CHALLENGE:
+                handleChallenge();
                 break;
 
-            case CMD_CHALLENGE_RESPONSE:
-                handleChallengeResponse(args);
+            case ID_CHALLENGE_RESPONSE:
+                handleChallengeResponse();
                 break;
 
-            case CMD_ERROR:
-                handleError(args, packet);
+            case ID_ERROR:
+                handleError(packet);
                 break;
 
             default:
@@ -337,6 +400,76 @@ public final class DefaultProtocol extends Protocol {
         return "default";
     }
 
+    /**
+     * Encodes the stateChange command for a player.
+     * @param changedPlayer The player that had the state change
+     * @param state The new state of the player
+     */
+    //@ requires state != PlayerState.InitialConnect;
+    private static ByteBuffer encodeStateChange(Player changedPlayer, PlayerState state) {
+        String stateString = null;
+
+        if (state == PlayerState.InGame) {
+            stateString = STATE_INGAME;
+        } else if (state == PlayerState.InLobby) {
+            stateString = STATE_INLOBBY;
+        } else if (state == PlayerState.InQueue) {
+            stateString = STATE_INQUEUE;
+        } else if (state == PlayerState.Disconnected) {
+            stateString = STATE_DISCONNECTED;
+        }
+
+        return TcpServer.encode(String.format("%s %s %s", CMD_STATE_CHANGE,
+                changedPlayer.getName(), stateString));
+    }
+
+    /**
+     * Joins encoded packets into a single buffer.
+     * @param packets The encoded packets
+     * @param ends If not null, receives the offset where each packet ends
+     */
+    private static ByteBuffer concat(List<ByteBuffer> packets, int[] ends) {
+        int length = 0;
+
+        for (ByteBuffer packet : packets) {
+            length += packet.remaining();
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(length);
+
+        for (int i = 0; i < packets.size(); i++) {
+            result.put(packets.get(i));
+
+            if (ends != null) {
+                ends[i] = result.position();
+            }
+        }
+
+        result.flip();
+
+        return result.asReadOnlyBuffer();
+    }
+
+    /**
+     * Registers the commands the client can send, which are the commands of the default protocol
+     * and those of the extensions the client specified during the handshake.
+     */
+    private void registerCommands() {
+        commands.register(CMD_READY, ID_READY);
+        commands.register(CMD_DO_MOVE, ID_DO_MOVE);
+        commands.register(CMD_ERROR, ID_ERROR);
+
+        if (hasChatExt) {
+            commands.register(CMD_LOCAL_CHAT, ID_LOCAL_CHAT);
+            commands.register(CMD_GLOBAL_CHAT, ID_GLOBAL_CHAT);
+        }
+
+        if (hasChallengeExt) {
+            commands.register(CMD_CHALLENGE, ID_CHALLENGE);
+            commands.register(CMD_CHALLENGE_RESPONSE, ID_CHALLENGE_RESPONSE);
+        }
+    }
+
     /**
      * Handles the ready command send by the client which signals he is ready for a matchmaking
      * game.
@@ -351,19 +484,17 @@ public final class DefaultProtocol extends Protocol {
 
     /**
      * Handles the doMove command send by the client which signals he wants to perform a move.
-     * @param args The arguments of the command split by the delimiter
      */
-    //@ requires args != null;
-    private void handleDoMove(String[] args) {
+    private void handleDoMove() {
         if (player.getState() != PlayerState.InGame) {
             sendErr(ERR_INVALID_CMD, "You must be in the game state");
-        } else if (args.length < 1) {
+        } else if (tokenizer.getArgCount() < 1) {
             sendErr(ERR_SYNTAX, "Expected at least 1 parameter");
-        } else if (!isValidCol(args[0])) {
+        } else if (!isValidCol(0)) {
             sendErr(ERR_INVALID_PARAMETER, "col");
         } else {
             GameRoom room = (GameRoom) player.getRoom();
-            int column = StringUtils.parseInt(args[0]);
+            int column = tokenizer.getArgInt(0);
 
             room.handleMove(player, column);
         }
@@ -376,15 +507,10 @@ public final class DefaultProtocol extends Protocol {
      */
     //@ requires packet != null;
     private void handleLocalChat(String packet) {
-        if (!hasChatExt) {
-            sendErr(ERR_INVALID_CMD, "Chat extension not specified during handshake");
-            return;
-        }
+        if (tokenizer.hasArgs()) {
+            if (isValidMessage(packet, tokenizer.getArgsOffset())) {
+                String message = packet.substring(tokenizer.getArgsOffset());
 
-        if (packet.matches(CMD_LOCAL_CHAT + DELIMITER + ".*")) {
-            String message = packet.substring(packet.indexOf(DELIMITER) + 1);
-
-            if (isValidMessage(message)) {
                 player.getRoom().broadcastChat(player, message);
             } else {
                 send(ERR_INVALID_CHAT);
@@ -402,22 +528,22 @@ public final class DefaultProtocol extends Protocol {
      */
     //@ requires packet != null;
     private void handleGlobalChat(String packet) {
-        if (!hasChatExt) {
-            sendErr(ERR_INVALID_CMD, "Chat extension not specified during handshake");
-            return;
-        }
-
-        if (packet.matches(CMD_GLOBAL_CHAT + DELIMITER + ".*")) {
-            String message = packet.substring(packet.indexOf(DELIMITER) + 1);
-
-            if (isValidMessage(message)) {
+        if (tokenizer.hasArgs()) {
+            if (isValidMessage(packet, tokenizer.getArgsOffset())) {
+                String message = packet.substring(tokenizer.getArgsOffset());
                 String playerName = player.getName();
 
                 Log.info(LogLevel.Verbose, "[Global chat] %s: %s", playerName, message);
 
-                for (Player p : Main.INSTANCE.getPlayerManager().getAllBut(player)) {
-                    p.getProtocol().sendGlobalChat(playerName, message);
+                Broadcast broadcast = new Broadcast();
+
+                for (Player p : Main.INSTANCE.getPlayerManager().getAll()) {
+                    if (p != player) {
+                        p.getProtocol().sendGlobalChat(broadcast, playerName, message);
+                    }
                 }
+
+                broadcast.send();
             } else {
                 send(ERR_INVALID_CHAT);
             }
@@ -429,66 +555,50 @@ public final class DefaultProtocol extends Protocol {
     /**
      * Handles the challenge command send by the client which signals he wants to challenge another
      * player.
-     * @param args The arguments of the command split by the delimiter
      */
-    //@ requires args != null;
-    private void handleChallenge(String[] args) {
-        if (!hasChallengeExt) {
-            send(ERR_INVALID_CMD, "Challenge extension not specified during handshake");
-            return;
-        }
-
+    private void handleChallenge() {
         if (player.getState() != PlayerState.InLobby) {
             sendErr(ERR_INVALID_CMD, "You must be in the lobby state");
-        } else if (args.length < 1) {
+        } else if (tokenizer.getArgCount() < 1) {
             sendErr(ERR_SYNTAX, "Expected at least 1 parameter");
-        } else if (!isValidName(args[0])) {
+        } else if (!isValidName(0)) {
             sendErr(ERR_INVALID_PARAMETER, "player-name");
         } else {
-            Main.INSTANCE.getChallenger().challenge(player, args[0]);
+            Main.INSTANCE.getChallenger().challenge(player, tokenizer.getArg(0));
         }
     }
 
     /**
      * Handles the challengeResponse command send by the client which signals he wants to respond to
      * a challenge request.
-     * @param args The arguments of the command split by the delimiter.
      */
-    //@ requires args != null;
-    private void handleChallengeResponse(String[] args) {
-        if (!hasChallengeExt) {
-            send(ERR_INVALID_CMD, "Challenge extension not specified during handshake");
-            return;
-        }
-
+    private void handleChallengeResponse() {
         if (player.getState() != PlayerState.InLobby) {
             sendErr(ERR_INVALID_CMD, "You must be in the lobby state");
-        } else if (args.length < 2) {
+        } else if (tokenizer.getArgCount() < 2) {
             sendErr(ERR_SYNTAX, "Expected at least 2 parameters");
-        } else if (!isValidName(args[0])) {
+        } else if (!isValidName(0)) {
             sendErr(ERR_INVALID_PARAMETER, "player-name");
-        } else if (!isValidBoolean(args[1])) {
+        } else if (!isValidBoolean(1)) {
             sendErr(ERR_INVALID_PARAMETER, "boolean-answer");
         } else {
-            boolean answer = args[1].equals("yes");
+            boolean answer = tokenizer.argEquals(1, "yes");
             Challenger challenger = Main.INSTANCE.getChallenger();
 
-            challenger.handleChallengeResponse(player, args[0], answer);
+            challenger.handleChallengeResponse(player, tokenizer.getArg(0), answer);
         }
     }
 
     /**
      * Handles the error command send by the client which signals he wants to inform the server he
      * has encountered an error.
-     * @param args The arguments of the command split by the delimiter.
      * @param packet The raw packet as received by handlePacket
      */
-    //@ requires args != null;
     //@ requires packet != null;
-    private void handleError(String[] args, String packet) {
-        if (args.length < 1) {
+    private void handleError(String packet) {
+        if (tokenizer.getArgCount() < 1) {
             sendErr(ERR_SYNTAX, "Expected at least 1 parameter");
-        } else if (!isValidError(args[0])) {
+        } else if (!isValidError(0)) {
             sendErr(ERR_INVALID_PARAMETER, "error_code");
         } else {
             int minLength = CMD_ERROR.length() + 4; // delimiter(1) + error_code(3) == 4.
@@ -499,74 +609,44 @@ public final class DefaultProtocol extends Protocol {
             // client's error as the information is -very- limited or completely implementation
             // specific. Outputting this error is more like a debug feature than anything.
             Log.warning(LogLevel.Minimal, "Client %s reported an error: %s (%s)", player.getName(),
-                    message, args[0]);
+                    message, tokenizer.getArg(0));
         }
     }
 
     /**
-     * Checks if a given column string is in a valid format.
-     * @param col The column string
+     * Checks if an argument is a valid column, a single digit from 0 to 6.
+     * @param index The index of the argument
      */
     /*@ pure */
-    //@ requires col != null;
-    private boolean isValidCol(String col) {
-        return col.matches("[0-6]");
-    }
-
-    /**
-     * Checks if a given message string is in a valid format.
-     * @param message The message string
-     */
-    /*@ pure */
-    //@ requires message != null;
-    private boolean isValidMessage(String message) {
-        return message.matches("[a-zA-Z0-9 ]*");
-    }
+    //@ requires index >= 0 && index < tokenizer.getArgCount();
+    private boolean isValidCol(int index) {
+        if (tokenizer.getArgLength(index) != 1) {
+            return false;
+        }
 
-    /**
-     * Checks if a given name string is in a valid format.
-     * @param name The name string
-     */
-    /*@ pure */
-    //@ requires name != null;
-    private boolean isValidName(String name) {
-        return name.matches("\\w+");
-    }
+        char c = tokenizer.getArgChar(index, 0);
 
-    /**
-     * Checks if a given boolean string is in a valid format.
-     * @param bool The boolean string
-     */
-    /*@ pure */
-    //@ requires bool != null;
-    private boolean isValidBoolean(String bool) {
-        return bool.matches("yes|no");
+        return c >= '0' && c <= '6';
     }
 
     /**
-     * Checks if a given error code string is in a valid format.
-     * @param error The error code string
+     * Checks if an argument is a valid boolean, either yes or no.
+     * @param index The index of the argument
      */
     /*@ pure */
-    //@ requires error != null;
-    private boolean isValidError(String error) {
-        return error.matches("\\d{3}");
+    //@ requires index >= 0 && index < tokenizer.getArgCount();
+    private boolean isValidBoolean(int index) {
+        return tokenizer.argEquals(index, "yes") || tokenizer.argEquals(index, "no");
     }
 
     /**
-     * Checks if a given extension is supported by this protocol instance.
-     * @param extension The name of the extension to check
+     * Checks if an argument is a valid error code, which consists of 3 digits.
+     * @param index The index of the argument
      */
     /*@ pure */
-    //@ requires extension != null;
-    private boolean isExtensionSupported(String extension) {
-        for (String supportedExtension : supportedExtensions) {
-            if (supportedExtension.equals(extension)) {
-                return true;
-            }
-        }
-
-        return false;
+    //@ requires index >= 0 && index < tokenizer.getArgCount();
+    private boolean isValidError(int index) {
+        return tokenizer.getArgLength(index) == 3 && tokenizer.isArgInt(index);
     }
 
 }
@@ -6,7 +6,6 @@ import server.Main;
 import server.player.Player;
 import server.player.PlayerManager;
 import server.player.PlayerState;
-import findfour.shared.utils.StringUtils;
 
 public final class InitialProtocol extends Protocol {
     private static final String CMD_JOIN = "join";
@@ -26,12 +25,10 @@ public final class InitialProtocol extends Protocol {
 
     @Override
     public void handlePacket(String packet) {
-        String command = StringUtils.extractCommand(packet, DELIMITER);
+        tokenizer.tokenize(packet);
 
-        if (command.equals(CMD_JOIN)) {
-            String[] args = StringUtils.extractArgs(packet, DELIMITER, false);
-
-            handleJoin(args);
+        if (tokenizer.isCommand(CMD_JOIN)) {
+            handleJoin();
         } else {
             send(ERR_INVALID_CMD);
         }
@@ -52,40 +49,44 @@ public final class InitialProtocol extends Protocol {
         return "initial";
     }
 
-    private void handleJoin(String[] args) {
-        if (args.length < 2) {
+    private void handleJoin() {
+        if (tokenizer.getArgCount() < 2) {
             sendErr(ERR_SYNTAX, "Expected at least 2 parameters");
+        } else if (!isValidName(0)) {
+            sendErr(ERR_INVALID_USERNAME, "player-name");
+        } else if (!isGroupValid(1)) {
+            sendErr(ERR_INVALID_PARAMETER, "group-number");
+        } else if (!areExtensionsValid()) {
+            sendErr(ERR_INVALID_PARAMETER, "extension-list");
         } else {
-            String requestedName = args[0];
-            String group = args[1];
-            String[] supportedExtension = new String[args.length - 2];
-            System.arraycopy(args, 2, supportedExtension, 0, supportedExtension.length);
-
-            if (!isNameValid(requestedName)) {
-                sendErr(ERR_INVALID_USERNAME, "player-name");
-            } else if (!isGroupValid(group)) {
-                sendErr(ERR_INVALID_PARAMETER, "group-number");
-            } else if (!areExtensionsValid(supportedExtension)) {
-                sendErr(ERR_INVALID_PARAMETER, "extension-list");
-            } else if (!playerManager.completeSession(player, requestedName, group,
+            String requestedName = tokenizer.getArg(0);
+            String group = tokenizer.getArg(1);
+            String[] supportedExtension = new String[tokenizer.getArgCount() - 2];
+
+            for (int i = 0; i < supportedExtension.length; i++) {
+                supportedExtension[i] = tokenizer.getArg(i + 2);
+            }
+
+            if (!playerManager.completeSession(player, requestedName, group,
                     supportedExtension)) {
                 // If completeSession returns false it means that the requested name is taken.
                 sendErr(ERR_INVALID_USERNAME, "Name has already been taken");
+            } else if (player.getProtocol() instanceof BinaryProtocol) {
+                // The client switches once it receives the accept packet, which was sent by
+                // completeSession. This thread only receives the next packet after returning, so
+                // the switch is always in time.
+                player.getClient().setBinaryFraming();
             }
         }
     }
 
-    private boolean isNameValid(String name) {
-        return name.matches("\\w+");
+    private boolean isGroupValid(int index) {
+        return tokenizer.getArgLength(index) == 2 && tokenizer.isArgInt(index);
     }
 
-    private boolean isGroupValid(String group) {
-        return group.matches("\\d{2}");
-    }
-
-    private boolean areExtensionsValid(String[] extensions) {
-        for (String extension : extensions) {
-            if (!isExtensionValid(extension)) {
+    private boolean areExtensionsValid() {
+        for (int i = 2; i < tokenizer.getArgCount(); i++) {
+            if (!isExtensionValid(i)) {
                 return false;
             }
         }
@@ -93,18 +94,30 @@ public final class InitialProtocol extends Protocol {
         return true;
     }
 
-    private boolean isExtensionValid(String extension) {
-        return extension.matches("[a-zA-Z][a-zA-Z_]*");
+    private boolean isExtensionValid(int index) {
+        int length = tokenizer.getArgLength(index);
+
+        for (int i = 0; i < length; i++) {
+            char c = tokenizer.getArgChar(index, i);
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+
+            if (!letter && (i == 0 || c != '_')) {
+                return false;
+            }
+        }
+
+        return length > 0;
     }
 
     //----- Unused protocol implementations -----    
     @Override
-    public void sendStartGame(String startingPlayer, String otherPlayer) {
+    public void sendStartGame(Broadcast broadcast, String startingPlayer,
+            String otherPlayer) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendRequestMove(String playerName) {
+    public void sendRequestMove(Broadcast broadcast, String playerName) {
         throw new IllegalInvokeException();
     }
 
@@ -119,42 +132,47 @@ public final class InitialProtocol extends Protocol {
     }
 
     @Override
-    public void sendDoneMove(String playerName, int column) {
+    public void sendDoneMove(Broadcast broadcast, String playerName, int column) {
+        throw new IllegalInvokeException();
+    }
+
+    @Override
+    public void sendGameWon(Broadcast broadcast, String winner) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendGameWon(String winner) {
+    public void sendGameDraw(Broadcast broadcast) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendGameDraw() {
+    public void sendOpponentDisconnected(Broadcast broadcast, String name) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendOpponentDisconnected(String name) {
+    public void sendStateChanges(Player[] changedPlayers, PlayerState[] states, int count) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendStateChange(String playerName, PlayerState state) {
+    public void forgetPlayer(Player other) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendClientStates() {
+    public void sendClientStates(LobbySnapshot snapshot) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendGlobalChat(String playerName, String message) {
+    public void sendGlobalChat(Broadcast broadcast, String playerName, String message) {
         throw new IllegalInvokeException();
     }
 
     @Override
-    public void sendLocalChat(String playerName, String message) {
+    public void sendLocalChat(Broadcast broadcast, String playerName, String message) {
         throw new IllegalInvokeException();
     }
 
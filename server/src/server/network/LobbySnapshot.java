@@ -0,0 +1,170 @@
+package server.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import server.player.Player;
+import server.player.PlayerState;
+
+/**
+ * The states of all players that are online at a version of the lobby, which is sent to players
+ * entering the lobby. A snapshot never changes, so every protocol only encodes it once and the
+ * encoded snapshot is shared by all players entering the lobby until the next version.
+ * <p>
+ * The encoding of a snapshot remembers where the entry of every player ends, so the entry of the
+ * player that receives it can be left out without copying the rest.
+ * @author ciske
+ *
+ */
+public final class LobbySnapshot {
+    private final long version;
+    private final Player[] players;
+    private final PlayerState[] states;
+    // The encoded snapshot per protocol. There are only a few protocols, so a list is searched.
+    private final List<Encoding> encodings;
+
+    /**
+     * Creates a new snapshot.
+     * @param argVersion The version of the lobby
+     * @param argStates The state of every player that is online
+     */
+    //@ requires argStates != null;
+    public LobbySnapshot(long argVersion, Map<Player, PlayerState> argStates) {
+        this.version = argVersion;
+        this.players = new Player[argStates.size()];
+        this.states = new PlayerState[argStates.size()];
+        this.encodings = new ArrayList<Encoding>(1);
+
+        int i = 0;
+
+        for (Map.Entry<Player, PlayerState> entry : argStates.entrySet()) {
+            players[i] = entry.getKey();
+            states[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    /*@ pure */
+    public long getVersion() {
+        return version;
+    }
+
+    /*@ pure */
+    public int getSize() {
+        return players.length;
+    }
+
+    //@ requires index >= 0 && index < getSize();
+    /*@ pure */
+    public Player getPlayer(int index) {
+        return players[index];
+    }
+
+    //@ requires index >= 0 && index < getSize();
+    /*@ pure */
+    public PlayerState getState(int index) {
+        return states[index];
+    }
+
+    /**
+     * Returns the players in the snapshot, the array must not be modified.
+     */
+    /*@ pure */
+    Player[] getPlayers() {
+        return players;
+    }
+
+    /**
+     * Returns the states of the players in the snapshot, the array must not be modified.
+     */
+    /*@ pure */
+    PlayerState[] getStates() {
+        return states;
+    }
+
+    /**
+     * Returns the index of the entry of a player, or -1 if the snapshot does not contain it.
+     * @param player The player
+     */
+    /*@ pure */
+    public int indexOf(Player player) {
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == player) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the snapshot as encoded by a protocol, or null if that protocol did not encode it.
+     * @param protocolName The name of the protocol
+     */
+    /*@ pure */
+    public synchronized Encoding getEncoding(String protocolName) {
+        for (Encoding encoding : encodings) {
+            if (encoding.protocolName.equals(protocolName)) {
+                return encoding;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Sets the encoded snapshot for a protocol.
+     * @param protocolName The name of the protocol
+     * @param data The encoded snapshot
+     * @param entryEnds The offset in the data where the entry of every player ends, or null if
+     * the entries can't be left out
+     * @return The encoding
+     */
+    //@ requires protocolName != null && data != null;
+    public synchronized Encoding setEncoding(String protocolName, ByteBuffer data,
+            int[] entryEnds) {
+        Encoding encoding = new Encoding(protocolName, data, entryEnds);
+
+        encodings.add(encoding);
+
+        return encoding;
+    }
+
+    /**
+     * A snapshot as encoded by a protocol.
+     */
+    public static final class Encoding {
+        private final String protocolName;
+        private final ByteBuffer data;
+        private final int[] entryEnds;
+
+        Encoding(String argProtocolName, ByteBuffer argData, int[] argEntryEnds) {
+            this.protocolName = argProtocolName;
+            this.data = argData;
+            this.entryEnds = argEntryEnds;
+        }
+
+        /*@ pure */
+        public ByteBuffer getData() {
+            return data;
+        }
+
+        /**
+         * Returns the data without the entry at an index, as a part before and a part after the
+         * entry. Both parts share the data and may be empty.
+         * @param index The index of the entry to leave out
+         */
+        //@ requires index >= 0 && index < entryEnds.length;
+        public ByteBuffer[] getDataWithout(int index) {
+            ByteBuffer before = data.duplicate();
+            ByteBuffer after = data.duplicate();
+
+            before.limit(index == 0 ? 0 : entryEnds[index - 1]);
+            after.position(entryEnds[index]);
+
+            return new ByteBuffer[] {before, after};
+        }
+    }
+}
@@ -1,42 +1,87 @@
 package server.network;
 
+import java.nio.ByteBuffer;
+
+import server.IllegalInvokeException;
 import server.player.Player;
 import server.player.PlayerState;
+import findfour.shared.network.TcpServer;
+import findfour.shared.utils.Tokenizer;
 
 public abstract class Protocol {
     public static final char DELIMITER = ' ';
 
     protected final Player player;
+    // Reused for every packet, packets of a player are handled by one thread at a time.
+    protected final Tokenizer tokenizer;
 
     public Protocol(Player argPlayer) {
         this.player = argPlayer;
+        this.tokenizer = new Tokenizer(DELIMITER, false);
     }
 
     public abstract void handlePacket(String packet);
 
-    public abstract void sendStartGame(String startingPlayer, String otherPlayer);
+    /**
+     * Handles a binary frame, which is only received by protocols that negotiated binary framing.
+     * @param frame The payload of the frame, which is only valid during this call
+     */
+    public void handleFrame(ByteBuffer frame) {
+        throw new IllegalInvokeException();
+    }
+
+    public abstract void sendStartGame(Broadcast broadcast, String startingPlayer,
+            String otherPlayer);
 
-    public abstract void sendRequestMove(String playerName);
+    public abstract void sendRequestMove(Broadcast broadcast, String playerName);
 
     public abstract void sendNotYourMove();
 
     public abstract void sendInvalidMove();
 
-    public abstract void sendDoneMove(String playerName, int column);
+    public abstract void sendDoneMove(Broadcast broadcast, String playerName, int column);
+
+    public abstract void sendGameWon(Broadcast broadcast, String winner);
 
-    public abstract void sendGameWon(String winner);
+    public abstract void sendGameDraw(Broadcast broadcast);
 
-    public abstract void sendGameDraw();
+    public abstract void sendOpponentDisconnected(Broadcast broadcast, String name);
 
-    public abstract void sendOpponentDisconnected(String name);
+    /**
+     * Sends the state changes of other players that happened since the last update. Changes of
+     * this player itself and changes that were already sent are left out.
+     * @param changedPlayers The players whose state changed
+     * @param states The new states of the players
+     * @param count The number of changes
+     */
+    public abstract void sendStateChanges(Player[] changedPlayers, PlayerState[] states,
+            int count);
 
-    public abstract void sendStateChange(String playerName, PlayerState state);
+    /**
+     * Sends a single state change.
+     * @param changedPlayer The player whose state changed
+     * @param state The new state of the player
+     */
+    public void sendStateChange(Player changedPlayer, PlayerState state) {
+        sendStateChanges(new Player[] {changedPlayer}, new PlayerState[] {state}, 1);
+    }
+
+    /**
+     * Forgets what was sent about a player that went offline. This is called for every player
+     * before the id of the player is given to another player.
+     * @param other The player that went offline
+     */
+    public abstract void forgetPlayer(Player other);
 
-    public abstract void sendClientStates();
+    /**
+     * Sends the states of all other players to a player entering the lobby.
+     * @param snapshot The states of all players
+     */
+    public abstract void sendClientStates(LobbySnapshot snapshot);
 
-    public abstract void sendGlobalChat(String playerName, String message);
+    public abstract void sendGlobalChat(Broadcast broadcast, String playerName, String message);
 
-    public abstract void sendLocalChat(String playerName, String message);
+    public abstract void sendLocalChat(Broadcast broadcast, String playerName, String message);
 
     public abstract void sendChallengeNotify(String playerName);
 
@@ -58,7 +103,91 @@ public abstract class Protocol {
         player.getClient().send(String.format(format, args));
     }
 
+    /**
+     * Adds this player as recipient of a broadcast, formatting and encoding the packet if no other
+     * recipient using this protocol did so already.
+     * @param broadcast The broadcast
+     * @param format The format of the packet
+     * @param args The arguments of the format
+     */
+    protected void send(Broadcast broadcast, String format, Object... args) {
+        String protocolName = getName();
+
+        if (!broadcast.isEncoded(protocolName)) {
+            broadcast.setEncoded(protocolName, TcpServer.encode(String.format(format, args)));
+        }
+
+        broadcast.addRecipient(protocolName, player.getClient());
+    }
+
     protected void sendErr(String error, String message) {
         player.getClient().send(String.format("%s %s", error, message));
     }
+
+    /**
+     * Checks if an argument of the current packet is a valid player name, which consists of one or
+     * more letters, digits and underscores.
+     * @param index The index of the argument
+     */
+    /*@ pure */
+    //@ requires index >= 0 && index < tokenizer.getArgCount();
+    protected boolean isValidName(int index) {
+        int length = tokenizer.getArgLength(index);
+
+        for (int i = 0; i < length; i++) {
+            char c = tokenizer.getArgChar(index, i);
+
+            if (c != '_' && !isAsciiLetterOrDigit(c)) {
+                return false;
+            }
+        }
+
+        return length > 0;
+    }
+
+    /**
+     * Checks if a chat message, which may be empty, only consists of letters, digits and spaces.
+     * @param text The text containing the message
+     * @param offset The offset in the text where the message starts
+     */
+    /*@ pure */
+    //@ requires text != null;
+    protected static boolean isValidMessage(CharSequence text, int offset) {
+        for (int i = offset; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c != ' ' && !isAsciiLetterOrDigit(c)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if a given extension is in a list of extensions.
+     * @param extensions The extensions the player supports
+     * @param extension The name of the extension to check
+     */
+    /*@ pure */
+    //@ requires extensions != null && extension != null;
+    protected static boolean isExtensionSupported(String[] extensions, String extension) {
+        for (String supportedExtension : extensions) {
+            if (supportedExtension.equals(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns whether a character is an ASCII letter or digit, which unlike
+     * Character.isLetterOrDigit excludes letters and digits of other scripts.
+     * @param c The character
+     */
+    /*@ pure */
+    protected static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
 }
@@ -1,31 +1,69 @@
 package server.network;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import server.player.PlayerState;
 
+/**
+ * Remembers the last state that was sent to a client for every other player, so only changes are
+ * sent. The states are stored in an array indexed by the id of the player, ids are compact so the
+ * array only needs a byte for every player that is online.
+ * <p>
+ * The cache is updated by the threads of the players whose state changes, so it is synchronized.
+ * @author ciske
+ *
+ */
 final class StateCache {
-    private final Map<String, PlayerState> cache;
+    private static final int INITIAL_CAPACITY = 16;
+    // Marks that no state was sent for a player, the states are stored as their ordinal plus one.
+    private static final byte NONE = 0;
+
+    private byte[] states;
 
     StateCache() {
-        this.cache = new HashMap<String, PlayerState>();
+        this.states = new byte[INITIAL_CAPACITY];
     }
 
     /*@ pure */
-    boolean differs(String playerName, PlayerState state) {
-        if (!cache.containsKey(playerName)) {
-            return true;
+    //@ requires playerId >= 0;
+    synchronized boolean differs(int playerId, PlayerState state) {
+        byte current = playerId < states.length ? states[playerId] : NONE;
+
+        // A player that was never sent does not have to be sent to be offline either.
+        if (state == PlayerState.Disconnected) {
+            return current != NONE;
         }
 
-        return cache.get(playerName) != state;
+        return current != toByte(state);
     }
 
-    void update(String playerName, PlayerState state) {
+    //@ requires playerId >= 0;
+    //@ ensures !differs(playerId, state);
+    synchronized void update(int playerId, PlayerState state) {
         if (state == PlayerState.Disconnected) {
-            cache.remove(playerName);
-        } else {
-            cache.put(playerName, state);
+            remove(playerId);
+            return;
         }
+
+        if (playerId >= states.length) {
+            states = Arrays.copyOf(states, Math.max(states.length * 2, playerId + 1));
+        }
+
+        states[playerId] = toByte(state);
+    }
+
+    /**
+     * Forgets the state of a player, which must be done before its id is given to another player.
+     * @param playerId The id of the player
+     */
+    //@ requires playerId >= 0;
+    synchronized void remove(int playerId) {
+        if (playerId < states.length) {
+            states[playerId] = NONE;
+        }
+    }
+
+    private static byte toByte(PlayerState state) {
+        return (byte) (state.ordinal() + 1);
     }
 }
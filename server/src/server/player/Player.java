@@ -14,8 +14,13 @@ public final class Player {
     public static final String INITIAL_NAME = "<unknown>";
     public static final String INITIAL_GROUP = "<unknown>";
     public static final String INITIAL_EXTENSIONS = "";
+    public static final int INITIAL_ID = -1;
 
     private final TcpServer.Client client;
+    // The values of System.nanoTime when the client connected and last sent something.
+    private final long connectTime;
+    private volatile long lastActivity;
+    private int id;
     private String name;
     private PlayerState state;
     private Protocol protocol;
@@ -26,6 +31,9 @@ public final class Player {
 
     public Player(TcpServer.Client argClient) {
         this.client = argClient;
+        this.connectTime = System.nanoTime();
+        this.lastActivity = connectTime;
+        this.id = INITIAL_ID;
         this.name = INITIAL_NAME;
         this.state = PlayerState.InitialConnect;
         this.protocol = new InitialProtocol(this);
@@ -39,6 +47,10 @@ public final class Player {
         return client;
     }
 
+    void setId(int argId) {
+        id = argId;
+    }
+
     void setName(String argName) {
         name = argName;
     }
@@ -83,6 +95,13 @@ public final class Player {
         room.addPlayer(this);
     }
 
+    /**
+     * Records that the client sent something, which keeps it from being idle.
+     */
+    public void touch() {
+        lastActivity = System.nanoTime();
+    }
+
     public void setRoom(Room room) {
         currentRoom = room;
     }
@@ -91,6 +110,32 @@ public final class Player {
         color = argColor;
     }
 
+    /**
+     * Returns the id of the player, which is assigned once the handshake is completed. Ids are
+     * unique among the players that are online and are reused once a player goes offline, so
+     * they can be used as index in arrays with an element for every player.
+     */
+    /*@ pure */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the value of System.nanoTime when the client connected.
+     */
+    /*@ pure */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * Returns the value of System.nanoTime when the client last sent something.
+     */
+    /*@ pure */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
     /*@ pure */
     public String getName() {
         return name;
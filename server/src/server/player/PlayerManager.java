@@ -1,12 +1,15 @@
 package server.player;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import server.Constants;
 import server.Main;
+import server.network.BinaryProtocol;
 import server.network.DefaultProtocol;
 import server.network.Protocol;
 import findfour.shared.ArgumentException;
@@ -15,39 +18,71 @@ import findfour.shared.logging.Log;
 import findfour.shared.logging.LogLevel;
 import findfour.shared.network.TcpServer;
 
+/**
+ * Keeps track of the players of all connected clients. The players are kept in concurrent maps,
+ * so looking up the player of a packet, iterating over the players for a broadcast, and joining
+ * and disconnecting players do not contend on a single lock.
+ * <p>
+ * A name is reserved atomically when a player joins, but the player is only added to the names
+ * once its protocol is set, so no other thread sends to it through the initial protocol. Joining
+ * and disconnecting lock the player itself, as the disconnect of a client can be handled while
+ * the client is joining.
+ * @author ciske
+ *
+ */
 public final class PlayerManager {
-    private final Object syncRoot;
     // Map player names (which are unique according to the protocol specs) to the Player instance.
-    private final Map<String, Player> nameToPlayerMapping;
-    // Map clients to the Player instance.
-    private final Map<TcpServer.Client, Player> clientToPlayerMapping;
+    private final ConcurrentMap<String, Player> nameToPlayerMapping;
+    // The names that are taken, including those of players that are still joining.
+    private final Set<String> reservedNames;
+    // Map clients to the Player instance, which tracks which clients have a session. The player is
+    // attached to the client as well, which is used to look it up.
+    private final ConcurrentMap<TcpServer.Client, Player> clientToPlayerMapping;
     // Contains references to all Player instances which have not yet performed the handshake and
     // thus do not yet have a name.
-    private final List<Player> initialSessions;
+    private final Set<Player> initialSessions;
+    // The ids of the players that completed the handshake. New players get the lowest free id,
+    // which keeps the ids compact. Guarded by itself.
+    private final BitSet usedIds;
+    // A read-only view of the players, which is iterated without copying the players.
+    private final Collection<Player> players;
 
     public PlayerManager() {
-        this.syncRoot = new Object();
-        this.nameToPlayerMapping = new HashMap<String, Player>();
-        this.clientToPlayerMapping = new HashMap<TcpServer.Client, Player>();
-        this.initialSessions = new LinkedList<Player>();
+        this.nameToPlayerMapping = new ConcurrentHashMap<String, Player>();
+        this.reservedNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.clientToPlayerMapping = new ConcurrentHashMap<TcpServer.Client, Player>();
+        this.initialSessions = Collections.newSetFromMap(new ConcurrentHashMap<Player, Boolean>());
+        this.usedIds = new BitSet();
+        this.players = Collections.unmodifiableCollection(nameToPlayerMapping.values());
     }
 
     public void createSession(TcpServer.Client client) {
         Player player = new Player(client);
 
-        synchronized (syncRoot) {
-            if (clientToPlayerMapping.containsKey(client)) {
-                throw new ArgumentException("client", "Client already has a session");
-            }
-
-            initialSessions.add(player);
-            clientToPlayerMapping.put(client, player);
+        if (clientToPlayerMapping.putIfAbsent(client, player) != null) {
+            throw new ArgumentException("client", "Client already has a session");
         }
+
+        // The player is attached to the client, so the player of a packet is found without a
+        // lookup. It stays attached after the session ends, for events that are still raised.
+        client.setAttachment(player);
+
+        initialSessions.add(player);
     }
 
     public boolean completeSession(Player player, String name, String group, String[] extensions) {
-        synchronized (syncRoot) {
-            if (nameToPlayerMapping.containsKey(name)) {
+        // Reserving the name is the only step that can fail, so a name is never taken twice even
+        // though nothing else is locked.
+        if (!reservedNames.add(name)) {
+            return false;
+        }
+
+        synchronized (player) {
+            // The client disconnected while joining, the name is not needed anymore. The session
+            // is ended before locking the player, so it is either ended here or after joining.
+            if (!clientToPlayerMapping.containsKey(player.getClient())) {
+                reservedNames.remove(name);
+
                 return false;
             }
 
@@ -60,15 +95,17 @@ public final class PlayerManager {
             // sending the accept packet.
             currentProtocol.sendAccept();
 
+            player.setId(allocateId());
             player.setName(name);
             player.setGroup(group);
             player.setExtensions(extensionsString);
             player.setProtocol(protocol);
-            player.moveToLobby();
 
             initialSessions.remove(player);
             nameToPlayerMapping.put(name, player);
 
+            player.moveToLobby();
+
             Log.info(LogLevel.Verbose, "Completed handshake with client %s from group %s", name,
                     group);
             Log.debug("ClientInfo %s: protocol %s, extensions %s", name, protocol.getName(),
@@ -79,16 +116,16 @@ public final class PlayerManager {
     }
 
     public void endSession(TcpServer.Client client) {
-        synchronized (syncRoot) {
-            Player player = clientToPlayerMapping.get(client);
-            clientToPlayerMapping.remove(client);
+        Player player = clientToPlayerMapping.remove(client);
 
+        synchronized (player) {
             if (player.getState() == PlayerState.InitialConnect) {
                 initialSessions.remove(player);
             } else {
                 handleDisconnect(player);
 
                 nameToPlayerMapping.remove(player.getName());
+                reservedNames.remove(player.getName());
 
                 /*
                  * Finally set the player state to disconnected. This will notify all clients in 
@@ -99,17 +136,30 @@ public final class PlayerManager {
         }
     }
 
+    /**
+     * Releases the id of a player that went offline, so it can be given to the next player. This
+     * is done by the lobby once it sent that the player went offline, as nothing is sent about
+     * the player after that.
+     * @param player The player that went offline
+     */
+    //@ requires player != null && player.getState() == PlayerState.Disconnected;
+    public void releaseId(Player player) {
+        for (Player p : players) {
+            p.getProtocol().forgetPlayer(player);
+        }
+
+        synchronized (usedIds) {
+            usedIds.clear(player.getId());
+        }
+    }
+
     /*@ pure */
     public boolean hasSession(TcpServer.Client client) {
-        synchronized (syncRoot) {
-            return clientToPlayerMapping.containsKey(client);
-        }
+        return clientToPlayerMapping.containsKey(client);
     }
 
     public boolean hasSession(String name) {
-        synchronized (syncRoot) {
-            return nameToPlayerMapping.containsKey(name);
-        }
+        return nameToPlayerMapping.containsKey(name);
     }
 
     public Player get(String name) {
@@ -117,14 +167,13 @@ public final class PlayerManager {
             throw new ArgumentNullException("name");
         }
 
-        synchronized (syncRoot) {
-            if (!nameToPlayerMapping.containsKey(name)) {
-                throw new ArgumentException("name",
-                        "Could not find a player with the specified name");
-            }
+        Player player = nameToPlayerMapping.get(name);
 
-            return nameToPlayerMapping.get(name);
+        if (player == null) {
+            throw new ArgumentException("name", "Could not find a player with the specified name");
         }
+
+        return player;
     }
 
     public Player get(TcpServer.Client client) {
@@ -132,50 +181,39 @@ public final class PlayerManager {
             throw new ArgumentNullException("client");
         }
 
-        synchronized (syncRoot) {
-            if (!clientToPlayerMapping.containsKey(client)) {
-                throw new ArgumentException("client",
-                        "Could not find a player mapped to the specified client");
-            }
+        Player player = client.getAttachment(Player.class);
 
-            return clientToPlayerMapping.get(client);
+        if (player == null) {
+            throw new ArgumentException("client",
+                    "Could not find a player mapped to the specified client");
         }
+
+        return player;
     }
 
     public Player getIfExists(String name) {
-        synchronized (syncRoot) {
-            if (nameToPlayerMapping.containsKey(name)) {
-                return nameToPlayerMapping.get(name);
-            } else {
-                return null;
-            }
-        }
+        return nameToPlayerMapping.get(name);
     }
 
-    public List<Player> getAllBut(Player player) {
-        List<Player> result = new ArrayList<Player>();
-
-        synchronized (syncRoot) {
-            for (Map.Entry<String, Player> entry : nameToPlayerMapping.entrySet()) {
-                if (entry.getValue() != player) {
-                    result.add(entry.getValue());
-                }
-            }
-        }
-
-        return result;
+    /**
+     * Returns a read-only view of all players that completed the handshake. The view is not
+     * copied, iterating over it is weakly consistent: it never fails when players join or leave
+     * while iterating, but it may or may not include those players.
+     */
+    //@ ensures \result != null;
+    /*@ pure */
+    public Collection<Player> getAll() {
+        return players;
     }
 
-    public List<Player> getAll() {
-        List<Player> result = new ArrayList<Player>(nameToPlayerMapping.size());
+    private int allocateId() {
+        synchronized (usedIds) {
+            int id = usedIds.nextClearBit(0);
 
-        synchronized (syncRoot) {
-            for (Map.Entry<String, Player> entry : nameToPlayerMapping.entrySet()) {
-                result.add(entry.getValue());
-            }
-        }
+            usedIds.set(id);
 
-        return result;
+            return id;
+        }
     }
 
     private String formatExtensions(String[] extensions) {
@@ -214,9 +252,11 @@ public final class PlayerManager {
     }
 
     private Protocol getProtocol(Player player, String group, String[] extensions) {
-        //if (group.equals(Constants.GROUP)) {
-        // NOTE: Return our custom protocol here if we ever decide to implement one.
-        //}
+        for (String extension : extensions) {
+            if (extension.equals(Constants.EXT_BINARY)) {
+                return new BinaryProtocol(player, extensions);
+            }
+        }
 
         return new DefaultProtocol(player, extensions);
     }
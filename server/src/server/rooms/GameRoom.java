@@ -1,25 +1,110 @@
 package server.rooms;
 
+import java.util.concurrent.Executor;
+
 import server.Main;
+import server.network.Broadcast;
 import server.player.Player;
 import findfour.shared.game.Disc;
 import findfour.shared.game.GameState;
+import findfour.shared.logging.Log;
+import findfour.shared.logging.LogLevel;
+import findfour.shared.utils.SerialExecutor;
+import findfour.shared.utils.TimerWheel;
 
+/**
+ * The room of a game between two players.
+ * <p>
+ * The events of a game, like moves, disconnects and timeouts, are not handled by the thread that
+ * raises them, but are posted to the mailbox of the room. The mailbox handles the events one at a
+ * time on a pool of threads that is shared by all games, so the state of the game needs no locks
+ * and a slow client never blocks the thread of its opponent.
+ * @author ciske
+ *
+ */
 public final class GameRoom extends Room {
+    private final int id;
     private final GameState gameState;
     private final Player playerRed;
     private final Player playerYellow;
+    private final Executor mailbox;
+    // The fields below are only used by the mailbox.
     private Player currentTurn;
+    // Counts the turns, so a move timeout that expires as the move is made is ignored.
+    private int turn;
+    private TimerWheel.Timeout moveTimeout;
+    private boolean ended;
 
-    public GameRoom(String name, Player playerA, Player playerB) {
+    /**
+     * Creates a new game room.
+     * @param argId The id of the room
+     * @param name The name of the room
+     * @param playerA The player that plays red
+     * @param playerB The player that plays yellow
+     * @param executor The executor on which the events of the game are handled
+     */
+    //@ requires name != null && playerA != null && playerB != null && executor != null;
+    public GameRoom(int argId, String name, Player playerA, Player playerB, Executor executor) {
         super(name);
 
+        this.id = argId;
         this.gameState = new GameState();
         this.playerRed = playerA;
         this.playerYellow = playerB;
+        this.mailbox = new SerialExecutor(executor);
     }
 
     public void begin() {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processBegin();
+            }
+        });
+    }
+
+    public void handleMove(final Player player, final int column) {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processMove(player, column);
+            }
+        });
+    }
+
+    @Override
+    public void onPlayerDisconnect(final Player player) {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processDisconnect(player);
+            }
+        });
+    }
+
+    /**
+     * Returns the id of the room, which is unique among the rooms of the room manager.
+     */
+    /*@ pure */
+    public int getId() {
+        return id;
+    }
+
+    /*@ pure */
+    public Player getPlayerRed() {
+        return playerRed;
+    }
+
+    /*@ pure */
+    public Player getPlayerYellow() {
+        return playerYellow;
+    }
+
+    public int getSpectatorCount() {
+        return getPlayers().size() - 2;
+    }
+
+    private void processBegin() {
         playerRed.setColor(Disc.Red);
         playerYellow.setColor(Disc.Yellow);
         currentTurn = GameState.STARTING_COLOR == Disc.Red ? playerRed : playerYellow;
@@ -27,29 +112,42 @@ public final class GameRoom extends Room {
         String startingPlayer = currentTurn.getName();
         String otherPlayer = getOpponent(currentTurn).getName();
 
-        playerRed.getProtocol().sendStartGame(startingPlayer, otherPlayer);
-        playerYellow.getProtocol().sendStartGame(startingPlayer, otherPlayer);
+        Broadcast startGame = new Broadcast();
+
+        playerRed.getProtocol().sendStartGame(startGame, startingPlayer, otherPlayer);
+        playerYellow.getProtocol().sendStartGame(startGame, startingPlayer, otherPlayer);
+        startGame.send();
 
         // Broadcast to all players in the room. Spectators could be added to this list.
+        Broadcast requestMove = new Broadcast();
+
         for (Player player : getPlayers()) {
-            player.getProtocol().sendRequestMove(startingPlayer);
+            player.getProtocol().sendRequestMove(requestMove, startingPlayer);
         }
+
+        requestMove.send();
+        startMoveTimeout();
     }
 
-    public synchronized void handleMove(Player player, int column) {
-        if (currentTurn != player) {
+    private void processMove(Player player, int column) {
+        if (ended || currentTurn != player) {
             player.getProtocol().sendNotYourMove();
         } else if (!gameState.isMoveValid(column, player.getColor())) {
             player.getProtocol().sendInvalidMove();
         } else {
+            cancelMoveTimeout();
             gameState.makeMove(column, player.getColor());
 
             String playerName = player.getName();
+            Broadcast doneMove = new Broadcast();
+
             // Broadcast the move to all players in the room.
             for (Player player2 : getPlayers()) {
-                player2.getProtocol().sendDoneMove(playerName, column);
+                player2.getProtocol().sendDoneMove(doneMove, playerName, column);
             }
 
+            doneMove.send();
+
             if (gameState.isGameOver()) {
                 handleGameOver();
             } else {
@@ -58,29 +156,63 @@ public final class GameRoom extends Room {
         }
     }
 
-    @Override
-    public synchronized void onPlayerDisconnect(Player player) {
+    private void processDisconnect(Player player) {
         // Call the base method first to remove the player from the players list. This prevents
         // possibly trying to send data to that disconnected player.
         super.onPlayerDisconnect(player);
 
-        if (isPlayer(player)) {
+        if (isPlayer(player) && !ended) {
             // One of the players disconnected. End the game.
+            ended = true;
+            cancelMoveTimeout();
+
             String opponent = getOpponent(player).getName();
             String playerName = player.getName();
 
+            Broadcast opponentDisconnected = new Broadcast();
+            Broadcast gameWon = new Broadcast();
+
             // Notify everyone in the game that there is a winner because the opponent disconnected.
             for (Player player2 : getPlayers()) {
-                player2.getProtocol().sendOpponentDisconnected(playerName);
-                player2.getProtocol().sendGameWon(opponent);
+                player2.getProtocol().sendOpponentDisconnected(opponentDisconnected, playerName);
+                player2.getProtocol().sendGameWon(gameWon, opponent);
             }
 
+            opponentDisconnected.send();
+            gameWon.send();
+
+            Main.INSTANCE.getMatchMaker().getRatings().recordWin(opponent, playerName);
+
             Main.INSTANCE.getRoomManager().endGame(this);
         }
     }
 
-    public int getSpectatorCount() {
-        return getPlayers().size() - 2;
+    /**
+     * Forfeits the game of a player that did not make a move in time, the opponent wins.
+     * @param player The player whose turn it was
+     * @param timedTurn The turn that timed out
+     */
+    private void processMoveTimeout(Player player, int timedTurn) {
+        if (ended || timedTurn != turn) {
+            return;
+        }
+
+        ended = true;
+
+        Log.info(LogLevel.Normal, "%s did not move in time and forfeits the game",
+                player.getName());
+
+        String opponent = getOpponent(player).getName();
+        Broadcast gameWon = new Broadcast();
+
+        for (Player player2 : getPlayers()) {
+            player2.getProtocol().sendGameWon(gameWon, opponent);
+        }
+
+        gameWon.send();
+
+        Main.INSTANCE.getMatchMaker().getRatings().recordWin(opponent, player.getName());
+        Main.INSTANCE.getRoomManager().endGame(this);
     }
 
     private boolean isPlayer(Player player) {
@@ -92,20 +224,59 @@ public final class GameRoom extends Room {
         return player == playerRed ? playerYellow : playerRed;
     }
 
+    private void startMoveTimeout() {
+        final Player player = currentTurn;
+        final int timedTurn = ++turn;
+
+        // The timeout expires on the thread of the timer wheel, so it is posted to the mailbox.
+        moveTimeout = Main.INSTANCE.getTimeoutManager().scheduleMoveTimeout(new Runnable() {
+            @Override
+            public void run() {
+                mailbox.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        processMoveTimeout(player, timedTurn);
+                    }
+                });
+            }
+        });
+    }
+
+    private void cancelMoveTimeout() {
+        if (moveTimeout != null) {
+            moveTimeout.cancel();
+            moveTimeout = null;
+        }
+    }
+
     private void handleGameOver() {
+        ended = true;
+
         Disc winningColor = gameState.getWinner();
+        Broadcast gameEnd = new Broadcast();
 
         if (winningColor == Disc.None) {
             // Game has no winner, but has ended, thus it is a draw.
             for (Player player : getPlayers()) {
-                player.getProtocol().sendGameDraw();
+                player.getProtocol().sendGameDraw(gameEnd);
             }
+
+            gameEnd.send();
+
+            Main.INSTANCE.getMatchMaker().getRatings().recordDraw(playerRed.getName(),
+                    playerYellow.getName());
         } else {
-            String winner = winningColor == Disc.Red ? playerRed.getName() : playerYellow.getName();
+            Player winner = winningColor == Disc.Red ? playerRed : playerYellow;
+            String winnerName = winner.getName();
 
             for (Player player : getPlayers()) {
-                player.getProtocol().sendGameWon(winner);
+                player.getProtocol().sendGameWon(gameEnd, winnerName);
             }
+
+            gameEnd.send();
+
+            Main.INSTANCE.getMatchMaker().getRatings().recordWin(winnerName,
+                    getOpponent(winner).getName());
         }
 
         Main.INSTANCE.getRoomManager().endGame(this);
@@ -116,9 +287,13 @@ public final class GameRoom extends Room {
 
         currentTurn = currentColor == Disc.Red ? playerRed : playerYellow;
         String playerName = currentTurn.getName();
+        Broadcast requestMove = new Broadcast();
 
         for (Player player : getPlayers()) {
-            player.getProtocol().sendRequestMove(playerName);
+            player.getProtocol().sendRequestMove(requestMove, playerName);
         }
+
+        requestMove.send();
+        startMoveTimeout();
     }
 }
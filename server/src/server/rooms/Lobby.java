@@ -1,33 +1,164 @@
 package server.rooms;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import server.Main;
+import server.network.LobbySnapshot;
 import server.player.Player;
 import server.player.PlayerState;
 
+/**
+ * The room players are in when they are not in a game.
+ * <p>
+ * State changes of players are not sent right away, but collected and sent every update interval.
+ * A player which changes its state several times within an interval only has its last state sent,
+ * and every player in the lobby receives all changes of an interval as a single message. Players
+ * entering the lobby receive a snapshot of the states of all players, which is shared by all
+ * players entering the lobby until the next update changes it.
+ * @author ciske
+ *
+ */
 public final class Lobby extends Room {
     public static final String LOBBY_NAME = "lobby";
+    /**
+     * The interval in milliseconds at which state changes are sent.
+     */
+    public static final int UPDATE_INTERVAL = 50;
+
+    // The states of the players as they were last sent, in the order the players came online.
+    // Guarded by this lobby.
+    private final Map<Player, PlayerState> publishedStates;
+    // The state changes since the last update, guarded by itself.
+    private final Map<Player, PlayerState> pendingChanges;
+    private long version;
+    private LobbySnapshot snapshot;
+    private ScheduledExecutorService updateTimer;
 
     public Lobby() {
         super(LOBBY_NAME);
+
+        this.publishedStates = new LinkedHashMap<Player, PlayerState>();
+        this.pendingChanges = new LinkedHashMap<Player, PlayerState>();
     }
 
     public void playerStateChanged(Player player) {
-        String name = player.getName();
-        PlayerState state = player.getState();
-
-        for (Player p : getPlayers()) {
-            // Send the status update to all players in the lobby, excluding the player itself.
-            if (p != player) {
-                p.getProtocol().sendStateChange(name, state);
-            }
+        synchronized (pendingChanges) {
+            pendingChanges.put(player, player.getState());
         }
     }
 
     @Override
-    public void addPlayer(Player player) {
+    public synchronized void addPlayer(Player player) {
         // When a player joins the lobby send him the states of all other clients, which is
-        // required for the lobby extension.
-        player.getProtocol().sendClientStates();
+        // required for the lobby extension. The changes that are still pending are sent by the
+        // next update, as the player is in the lobby by then.
+        if (snapshot == null || snapshot.getVersion() != version) {
+            snapshot = new LobbySnapshot(version, publishedStates);
+        }
+
+        player.getProtocol().sendClientStates(snapshot);
 
         super.addPlayer(player);
     }
+
+    /**
+     * Starts sending the state changes every update interval.
+     */
+    public synchronized void startUpdates() {
+        if (updateTimer != null) {
+            return;
+        }
+
+        updateTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Lobby-update");
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+        updateTimer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                update();
+            }
+        }, UPDATE_INTERVAL, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sending the state changes every update interval, after sending the changes that are
+     * still pending.
+     */
+    public void stopUpdates() {
+        ScheduledExecutorService timer;
+
+        synchronized (this) {
+            timer = updateTimer;
+            updateTimer = null;
+        }
+
+        if (timer != null) {
+            timer.shutdown();
+
+            try {
+                timer.awaitTermination(UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        update();
+    }
+
+    /**
+     * Sends the state changes since the last update to all players in the lobby.
+     */
+    public void update() {
+        List<Player> offline = new ArrayList<Player>();
+
+        synchronized (this) {
+            Player[] players;
+            PlayerState[] states;
+
+            synchronized (pendingChanges) {
+                if (pendingChanges.isEmpty()) {
+                    return;
+                }
+
+                players = pendingChanges.keySet().toArray(new Player[pendingChanges.size()]);
+                states = pendingChanges.values().toArray(new PlayerState[pendingChanges.size()]);
+                pendingChanges.clear();
+            }
+
+            for (int i = 0; i < players.length; i++) {
+                if (states[i] == PlayerState.Disconnected) {
+                    publishedStates.remove(players[i]);
+                    offline.add(players[i]);
+                } else {
+                    publishedStates.put(players[i], states[i]);
+                }
+            }
+
+            version++;
+
+            for (Player p : getPlayers()) {
+                p.getProtocol().sendStateChanges(players, states, players.length);
+            }
+        }
+
+        // Nothing is sent about these players anymore. This is done outside of the lock, as it
+        // visits every player that is online.
+        for (Player p : offline) {
+            Main.INSTANCE.getPlayerManager().releaseId(p);
+        }
+    }
 }
@@ -3,6 +3,7 @@ package server.rooms;
 import java.util.LinkedList;
 import java.util.List;
 
+import server.network.Broadcast;
 import server.player.Player;
 import findfour.shared.logging.Log;
 import findfour.shared.logging.LogLevel;
@@ -33,11 +34,15 @@ public abstract class Room {
 
         Log.info(LogLevel.Verbose, "[Local chat@%s] %s: %s", roomName, playerName, message);
 
+        Broadcast broadcast = new Broadcast();
+
         for (Player player : players) {
             if (player != source) {
-                player.getProtocol().sendLocalChat(playerName, message);
+                player.getProtocol().sendLocalChat(broadcast, playerName, message);
             }
         }
+
+        broadcast.send();
     }
 
     public List<Player> getPlayers() {
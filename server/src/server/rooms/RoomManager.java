@@ -1,9 +1,13 @@
 package server.rooms;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import server.player.Player;
 import server.player.PlayerState;
@@ -11,47 +15,78 @@ import findfour.shared.logging.Log;
 import findfour.shared.logging.LogLevel;
 
 public final class RoomManager {
+    /**
+     * The number of threads that handle the events of all games.
+     */
+    private static final int GAME_THREADS = Runtime.getRuntime().availableProcessors();
+
     private final Lobby lobby;
-    private final Map<String, GameRoom> gameRooms;
-    private final Object syncRoot = new Object();
+    // Map room ids to the game rooms.
+    private final ConcurrentMap<Integer, GameRoom> gameRooms;
+    // A read-only view of the game rooms, which is iterated without copying the rooms.
+    private final Collection<GameRoom> gameRoomsView;
+    private final AtomicInteger nextRoomId;
+    // The pool that is shared by the mailboxes of all game rooms.
+    private final ExecutorService gameExecutor;
 
     public RoomManager() {
         this.lobby = new Lobby();
-        this.gameRooms = new HashMap<String, GameRoom>();
+        this.gameRooms = new ConcurrentHashMap<Integer, GameRoom>();
+        this.gameRoomsView = Collections.unmodifiableCollection(gameRooms.values());
+        this.nextRoomId = new AtomicInteger();
+        this.gameExecutor = Executors.newFixedThreadPool(GAME_THREADS, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, String.format("GameRoom-%d", count++));
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
     }
 
     public Lobby getLobby() {
         return lobby;
     }
 
-    public List<GameRoom> getGameRooms() {
-        List<GameRoom> result = new ArrayList<GameRoom>();
-
-        synchronized (syncRoot) {
-            for (Map.Entry<String, GameRoom> entry : gameRooms.entrySet()) {
-                result.add(entry.getValue());
-            }
-        }
+    /**
+     * Returns a read-only view of the active game rooms. The view is not copied, iterating over it
+     * is weakly consistent: it never fails when games start or end while iterating, but it may or
+     * may not include those games.
+     */
+    //@ ensures \result != null;
+    /*@ pure */
+    public Collection<GameRoom> getGameRooms() {
+        return gameRoomsView;
+    }
 
-        return result;
+    /**
+     * Returns the game room with an id, or null if there is no active game with that id.
+     * @param roomId The id of the room
+     */
+    /*@ pure */
+    public GameRoom getGameRoom(int roomId) {
+        return gameRooms.get(roomId);
     }
 
     public void startGame(Player playerA, Player playerB) {
-        String roomName = String.format("%s-%s", playerA.getName(), playerB.getName());
-        GameRoom room = new GameRoom(roomName, playerA, playerB);
+        int roomId = nextRoomId.getAndIncrement();
+        String roomName = playerA.getName() + '-' + playerB.getName();
+        GameRoom room = new GameRoom(roomId, roomName, playerA, playerB, gameExecutor);
 
         // Hack to ensure both players receive the state changed to in game, as the lobby extension
         // is really messy. Without this hack, on the end of a game a player could receive a state
         // switch to in game immediately followed by a state change to in lobby for his opponent.
-        playerA.getProtocol().sendStateChange(playerB.getName(), PlayerState.InGame);
-        playerB.getProtocol().sendStateChange(playerA.getName(), PlayerState.InGame);
+        playerA.getProtocol().sendStateChange(playerB, PlayerState.InGame);
+        playerB.getProtocol().sendStateChange(playerA, PlayerState.InGame);
 
         playerA.moveToGame(room);
         playerB.moveToGame(room);
 
-        synchronized (syncRoot) {
-            gameRooms.put(roomName, room);
-        }
+        gameRooms.put(roomId, room);
 
         Log.info(LogLevel.Normal, "Starting game between %s and %s", playerA.getName(),
                 playerB.getName());
@@ -60,18 +95,13 @@ public final class RoomManager {
     }
 
     void endGame(GameRoom room) {
-        String roomName = room.getName();
-        String playerA = roomName.substring(0, roomName.indexOf('-'));
-        String playerB = roomName.substring(roomName.indexOf('-') + 1);
-
-        Log.info(LogLevel.Normal, "The game between %s and %s has ended", playerA, playerB);
+        Log.info(LogLevel.Normal, "The game between %s and %s has ended",
+                room.getPlayerRed().getName(), room.getPlayerYellow().getName());
 
         for (Player player : room.getPlayers()) {
             player.moveToLobby();
         }
 
-        synchronized (syncRoot) {
-            gameRooms.remove(roomName);
-        }
+        gameRooms.remove(room.getId());
     }
 }
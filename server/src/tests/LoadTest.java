@@ -0,0 +1,137 @@
+package tests;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import findfour.shared.events.EventHandler;
+import findfour.shared.network.IoMode;
+import findfour.shared.network.TcpServer;
+import findfour.shared.network.VirtualThreads;
+
+/**
+ * Measures the memory the server uses per idle connection in an I/O mode. It starts a TcpServer,
+ * opens a number of connections to it from the same process and compares the memory use before
+ * and after. The client side of the connections is the same in every mode, so differences between
+ * modes are caused by the server.
+ * <p>
+ * Run each mode in a fresh JVM: <code>LoadTest MODE [CONNECTIONS] [PORT]</code>, where the mode is
+ * either 'blocking', 'selector' or 'virtual'.
+ * @author ciske
+ *
+ */
+public final class LoadTest {
+    private static final int DEFAULT_CONNECTIONS = 2000;
+    private static final int DEFAULT_PORT = 2727;
+    private static final int KILOBYTE = 1024;
+
+    private final Semaphore connected;
+
+    private LoadTest() {
+        this.connected = new Semaphore(0);
+    }
+
+    @EventHandler(eventId = TcpServer.EVENT_CLIENT_CONNECTED)
+    private void eventClientConnected(TcpServer.Client client, String host) {
+        connected.release();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        IoMode mode = parseMode(args.length > 0 ? args[0] : "blocking");
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+        LoadTest test = new LoadTest();
+        TcpServer server = new TcpServer();
+
+        server.setIoMode(mode);
+        server.registerEventHandlers(test);
+        server.start(port);
+
+        if (!server.isRunning()) {
+            System.out.println("Failed to start the server on port " + port);
+            return;
+        }
+
+        long heapBefore = getUsedHeap();
+        long rssBefore = getResidentSetSize();
+        int threadsBefore = Thread.activeCount();
+        List<Socket> sockets = new ArrayList<Socket>();
+
+        for (int i = 0; i < connections; i++) {
+            sockets.add(new Socket("localhost", port));
+        }
+
+        test.connected.acquire(connections);
+
+        long heapAfter = getUsedHeap();
+        long rssAfter = getResidentSetSize();
+        int threadsAfter = Thread.activeCount();
+
+        System.out.printf("Mode: %s (virtual threads %s)%n", mode,
+                VirtualThreads.isSupported() ? "supported" : "not supported");
+        System.out.printf("Connections: %d%n", connections);
+        System.out.printf("Platform threads: %d -> %d%n", threadsBefore, threadsAfter);
+        System.out.printf("Heap per connection: %d bytes%n", (heapAfter - heapBefore)
+                / connections);
+
+        if (rssBefore >= 0 && rssAfter >= 0) {
+            System.out.printf("Resident memory per connection: %d bytes%n", (rssAfter - rssBefore)
+                    / connections);
+        }
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        server.stop();
+    }
+
+    private static IoMode parseMode(String mode) {
+        if (mode.equals("selector")) {
+            return IoMode.Selector;
+        } else if (mode.equals("virtual")) {
+            return IoMode.Virtual;
+        }
+
+        return IoMode.Blocking;
+    }
+
+    private static long getUsedHeap() {
+        System.gc();
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Returns the resident memory of the process in bytes, which includes the thread stacks, or -1
+     * if it cannot be determined (it is only available on Linux).
+     */
+    private static long getResidentSetSize() {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+
+            try {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmRSS:")) {
+                        String value = line.substring("VmRSS:".length()).trim().split(" ")[0];
+
+                        return Long.parseLong(value) * KILOBYTE;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,70 @@
+package tests.matchmaking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import server.matchmaking.MatchMaker;
+import server.matchmaking.Ratings;
+import findfour.shared.logging.Log;
+import findfour.shared.logging.LogLevel;
+
+public class MatchMakerTests {
+    private Ratings ratings;
+
+    @Before
+    public void setUp() throws Exception {
+        // Recording a result logs the new ratings.
+        Log.setLogLevel(LogLevel.Off);
+
+        ratings = new Ratings();
+    }
+
+    @Test
+    public void testInitialRating() {
+        assertEquals(ratings.getRating("a"), Ratings.INITIAL_RATING);
+    }
+
+    @Test
+    public void testRecordWin() {
+        // Equal players are expected to score 0.5, so the winner gains half of K = 32.
+        ratings.recordWin("a", "b");
+        assertEquals(ratings.getRating("a"), 1516);
+        assertEquals(ratings.getRating("b"), 1484);
+    }
+
+    @Test
+    public void testRecordDraw() {
+        ratings.recordDraw("a", "b");
+        assertEquals(ratings.getRating("a"), 1500);
+        assertEquals(ratings.getRating("b"), 1500);
+
+        // The stronger player is expected to score about 0.546, so a draw costs it a point.
+        ratings.recordWin("a", "b");
+        ratings.recordDraw("a", "b");
+        assertEquals(ratings.getRating("a"), 1515);
+        assertEquals(ratings.getRating("b"), 1485);
+    }
+
+    @Test
+    public void testMatchInsideWindow() {
+        assertTrue(MatchMaker.isMatch(1500, 1600, 0));
+        assertTrue(MatchMaker.isMatch(1600, 1500, 0));
+        assertTrue(MatchMaker.isMatch(1500, 1650, TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void testMatchOutsideWindow() {
+        assertFalse(MatchMaker.isMatch(1500, 1601, 0));
+        assertFalse(MatchMaker.isMatch(1500, 1651, TimeUnit.SECONDS.toNanos(1)));
+
+        // The window only grows every whole second.
+        assertFalse(MatchMaker.isMatch(1500, 1601, TimeUnit.MILLISECONDS.toNanos(999)));
+    }
+
+}
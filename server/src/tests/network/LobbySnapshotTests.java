@@ -0,0 +1,62 @@
+package tests.network;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import server.network.LobbySnapshot;
+import server.player.Player;
+import server.player.PlayerState;
+
+public class LobbySnapshotTests {
+    private LobbySnapshot.Encoding encoding;
+
+    @Before
+    public void setUp() throws Exception {
+        LobbySnapshot snapshot = new LobbySnapshot(0, new HashMap<Player, PlayerState>());
+        ByteBuffer data = ByteBuffer.wrap("aa\nbbb\ncccc\n".getBytes(StandardCharsets.UTF_8));
+
+        encoding = snapshot.setEncoding("test", data, new int[] {3, 7, 12});
+    }
+
+    @Test
+    public void testWithoutFirst() {
+        ByteBuffer[] parts = encoding.getDataWithout(0);
+
+        assertEquals(decode(parts[0]), "");
+        assertEquals(decode(parts[1]), "bbb\ncccc\n");
+    }
+
+    @Test
+    public void testWithoutMiddle() {
+        ByteBuffer[] parts = encoding.getDataWithout(1);
+
+        assertEquals(decode(parts[0]), "aa\n");
+        assertEquals(decode(parts[1]), "cccc\n");
+    }
+
+    @Test
+    public void testWithoutLast() {
+        ByteBuffer[] parts = encoding.getDataWithout(2);
+
+        assertEquals(decode(parts[0]), "aa\nbbb\n");
+        assertEquals(decode(parts[1]), "");
+    }
+
+    @Test
+    public void testDataUnchanged() {
+        encoding.getDataWithout(1);
+
+        assertEquals(decode(encoding.getData()), "aa\nbbb\ncccc\n");
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+}
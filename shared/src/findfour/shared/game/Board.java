@@ -1,15 +1,23 @@
 package findfour.shared.game;
 
+import findfour.shared.ArgumentException;
 import findfour.shared.ArgumentOutOfRangeException;
 
 import java.util.Observable;
+import java.util.Random;
 
 /**
  * Represents a connect4 game board.
+ * <p>
+ * The board is stored as two bitboards, one per disc color, with one bit per slot. Each column
+ * occupies <code>ROWS + 1</code> consecutive bits, starting at the bottom row, where the extra
+ * (always empty) bit separates the columns so that shifting a bitboard never wraps a sequence
+ * around into the next column. The bottom slot of column <code>c</code> is thus bit
+ * <code>c * (ROWS + 1)</code>.
  * @author ciske
  *
  */
-public class Board extends Observable{
+public class Board extends Observable {
     /**
      * The number of columns the game board has.
      */
@@ -18,17 +26,57 @@ public class Board extends Observable{
      * The number of rows the game board has.
      */
     public static final int ROWS = 6;
-
-    private final Disc[] grid;
+    /**
+     * The number of bits a single column occupies in a bitboard.
+     */
+    private static final int COLUMN_BITS = ROWS + 1;
+    /**
+     * The bitboard with all bits of a single column (excluding the separator bit) set.
+     */
+    private static final long COLUMN_MASK = (1L << ROWS) - 1;
+    /**
+     * The number of bits a bitboard uses, including the separator bits.
+     */
+    private static final int BOARD_BITS = COLUMNS * COLUMN_BITS;
+    /**
+     * The bitboard with all playable slots set.
+     */
+    private static final long BOARD_MASK = computeBoardMask();
+    /**
+     * The number of slots the game board has.
+     */
+    private static final int SLOTS = COLUMNS * ROWS;
+    /**
+     * The seed of the Zobrist keys. The keys have to be the same on every run so that hashes can be
+     * stored and compared across runs.
+     */
+    private static final long ZOBRIST_SEED = 0x466f7572L;
+    /**
+     * The Zobrist keys, indexed by bit position for the red discs followed by the yellow discs.
+     */
+    private static final long[] ZOBRIST_KEYS = computeZobristKeys();
+
+    private long redDiscs;
+    private long yellowDiscs;
+    // The number of occupied slots in each column, counted from the bottom up to and including the
+    // topmost disc. This is the row index (from the bottom) of the next free slot.
+    private final int[] heights;
+    // The number of discs on the board, used to check for a full board without scanning it.
+    private int discCount;
+    // The winner of the current board state, which is updated on every change to the board so
+    // that querying it never has to scan the board.
+    private Disc winner;
+    // The Zobrist hash of the discs on the board, which is updated on every change to the board.
+    private long hash;
 
     /**
      * Creates a new board instance.
      */
-    //@ ensures grid != null;
+    //@ ensures heights != null;
     public Board() {
-        this.grid = new Disc[COLUMNS * ROWS];
+        this.heights = new int[COLUMNS];
 
-        // Clear the board at creation so that there are never null references in the grid.
+        // Clear the board at creation so that the board always starts in a known state.
         clear();
     }
 
@@ -38,20 +86,14 @@ public class Board extends Observable{
      */
     /*@ pure */
     //@ requires column >= 0 && column < COLUMNS;
-    //@ ensures \result >= 0 && \result <= ROWS - 1;
+    //@ ensures \result >= -1 && \result <= ROWS - 1;
     public int getNextFreeSlot(int column) {
         if (column < 0 || column >= COLUMNS) {
             throw new ArgumentOutOfRangeException("column", 0, COLUMNS);
         }
 
-        //@ loop_invariant 0 <= row && row <= ROWS;
-        for (int row = 0; row < ROWS; row++) {
-            if (getSlot(column, row) != Disc.None) {
-                return row - 1;
-            }
-        }
-
-        return ROWS - 1;
+        // Rows are indexed from the top, heights from the bottom.
+        return ROWS - 1 - heights[column];
     }
 
     /**
@@ -82,7 +124,6 @@ public class Board extends Observable{
     /*@ pure */
     //@ requires column >= 0 && column < COLUMNS;
     //@ requires row >= 0 && row < ROWS;
-    //@ ensures \result == grid[row * COLUMNS + column];
     public Disc getSlot(int column, int row) {
         if (column < 0 || column >= COLUMNS) {
             throw new ArgumentOutOfRangeException("column", 0, COLUMNS);
@@ -91,7 +132,15 @@ public class Board extends Observable{
             throw new ArgumentOutOfRangeException("row", 0, ROWS);
         }
 
-        return grid[row * COLUMNS + column];
+        long bit = getBit(column, row);
+
+        if ((redDiscs & bit) != 0) {
+            return Disc.Red;
+        } else if ((yellowDiscs & bit) != 0) {
+            return Disc.Yellow;
+        }
+
+        return Disc.None;
     }
 
     /**
@@ -99,22 +148,33 @@ public class Board extends Observable{
      * @param board The board state to synchronize to
      */
     //@ requires board != null;
-    //@ ensures (\forall int i; 0 <= i & i < board.grid.length; grid[i] == board.grid[i]);
+    //@ ensures redDiscs == board.redDiscs && yellowDiscs == board.yellowDiscs;
+    //@ ensures discCount == board.discCount && winner == board.winner;
     public void syncTo(Board board) {
-        //@ loop_invarient 0 <= i && i <= board.grid.length;
-        for (int i = 0; i < board.grid.length; i++) {
-            this.grid[i] = board.grid[i];
-        }
+        this.redDiscs = board.redDiscs;
+        this.yellowDiscs = board.yellowDiscs;
+        this.discCount = board.discCount;
+        this.winner = board.winner;
+        this.hash = board.hash;
+        System.arraycopy(board.heights, 0, this.heights, 0, COLUMNS);
     }
 
     /**
      * Clears the board to an empty state.
      */
-    //@ ensures (\forall int i; 0 <= i & i < grid.length; grid[i] == Disc.None);
+    //@ ensures redDiscs == 0 && yellowDiscs == 0;
+    //@ ensures discCount == 0 && winner == Disc.None && hash == 0;
+    //@ ensures (\forall int i; 0 <= i & i < COLUMNS; heights[i] == 0);
     void clear() {
-        //@ loop_invariant 0 <= i && i <= grid.length;
-        for (int i = 0; i < grid.length; i++) {
-            grid[i] = Disc.None;
+        redDiscs = 0;
+        yellowDiscs = 0;
+        discCount = 0;
+        winner = Disc.None;
+        hash = 0;
+
+        //@ loop_invariant 0 <= i && i <= COLUMNS;
+        for (int i = 0; i < COLUMNS; i++) {
+            heights[i] = 0;
         }
     }
 
@@ -132,9 +192,38 @@ public class Board extends Observable{
         //if (!isMoveValid(column, disc)) {
         //throw new ArgumentException("column", "invalid move");
         //}
-        setChanged();
-        setSlot(column, getNextFreeSlot(column), disc);
-        notifyObservers();
+        placeDisc(column, getNextFreeSlot(column), disc);
+
+        // Only the player that just moved can have completed a sequence, and only through the
+        // disc that was just placed, so there is no need to check the other color.
+        if (winner == Disc.None && connectsFour(disc == Disc.Red ? redDiscs : yellowDiscs)) {
+            winner = disc;
+        }
+
+        notifyChanged();
+    }
+
+    /**
+     * Undoes the last move made in a column by removing its topmost disc.
+     * @param column The index of the column in which the move to undo was made
+     */
+    //@ requires column >= 0 && column < COLUMNS;
+    //@ requires getNextFreeSlot(column) < ROWS - 1;
+    public void undoMove(int column) {
+        if (column < 0 || column >= COLUMNS) {
+            throw new ArgumentOutOfRangeException("column", 0, COLUMNS);
+        } else if (heights[column] == 0) {
+            throw new ArgumentException("column", "column is empty");
+        }
+
+        placeDisc(column, getNextFreeSlot(column) + 1, Disc.None);
+
+        // Removing a disc can only break sequences, so a board without a winner stays that way.
+        if (winner != Disc.None) {
+            winner = findWinner();
+        }
+
+        notifyChanged();
     }
 
     /**
@@ -143,301 +232,266 @@ public class Board extends Observable{
     /*@ pure */
     //@ ensures \result == isFull() || hasWinner();
     boolean isGameOver() {
-        return isFull() || hasWinner();
+        return discCount == SLOTS || winner != Disc.None;
     }
 
     /**
      * Returns whether the game has a winner.
      */
     /*@ pure */
-    //@ ensures \result == isWinner(Disc.Yellow) || isWinner(Disc.Red);
+    //@ ensures \result == (winner != Disc.None);
     public boolean hasWinner() {
-        return isWinner(Disc.Yellow) || isWinner(Disc.Red);
+        return winner != Disc.None;
     }
 
     /**
      * Returns the disc color of the winner, or Disc.None if no one has won yet.
      */
     /*@ pure */
-    //@ ensures \result == Disc.None || isWinner(\result) == true;
+    //@ ensures \result == winner;
     public Disc getWinner() {
-        if (!hasWinner()) {
-            return Disc.None;
-        }
+        return winner;
+    }
 
-        return isWinner(Disc.Yellow) ? Disc.Yellow : Disc.Red;
+    /**
+     * Returns the Zobrist hash of the discs on the board. Boards with the same discs in the same
+     * slots have the same hash, regardless of the order in which the discs were placed.
+     */
+    /*@ pure */
+    //@ ensures \result == hash;
+    public long getHash() {
+        return hash;
     }
 
     /**
-     * Returns whether the board is full with discs other than Disc.None.
+     * Returns the bitboard of the slots that contain a disc of the given color, see the class
+     * description for its layout. For Disc.None the bitboard of the empty slots is returned.
+     * @param disc The color of the discs
      */
     /*@ pure */
-    //@ ensures \result == !(\exists int i; 0 <= i && i < grid.length; grid[i] != Disc.None);  
-    public boolean isFull() {
-        //@ loop_invariant o <= i && i <= grid.length;
-        for (int i = 0; i < grid.length; i++) {
-            if (grid[i] == Disc.None) {
-                return false;
-            }
+    //@ requires disc != null;
+    public long getDiscs(Disc disc) {
+        if (disc == Disc.Red) {
+            return redDiscs;
+        } else if (disc == Disc.Yellow) {
+            return yellowDiscs;
         }
 
-        return true;
+        return BOARD_MASK & ~(redDiscs | yellowDiscs);
     }
 
     /**
-     * Checks if the given disc color has won.
-     * @param disc The color of the disc to check
+     * Returns the number of discs on the board.
      */
     /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    //@ ensures \result == hasHorizontalWin(disc) || hasVerticalWin(disc) || hasDiagonalWin(disc);
-    private boolean isWinner(Disc disc) {
-        return hasHorizontalWin(disc) || hasVerticalWin(disc) || hasDiagonalWin(disc);
+    //@ ensures \result >= 0 && \result <= SLOTS;
+    public int getDiscCount() {
+        return discCount;
     }
 
     /**
-     * Checks if the given color has won with a horizontal sequence.
-     * @param disc The color of the disc to check
+     * Returns whether the board is full with discs other than Disc.None.
      */
     /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    private boolean hasHorizontalWin(Disc disc) {
-        //@ loop_invariant 0 <= row && row <= ROWS;
-        for (int row = 0; row < ROWS; row++) {
-            int connectedCount = 0;
-
-            //@ loop_invariant 0 <= connectedCount && connectedCount <= 4;
-            //@ loop_invariant 0 <= column && column <= COLUMNS;
-            for (int column = 0; column < COLUMNS; column++) {
-                if (getSlot(column, row) == disc) {
-                    connectedCount++;
-
-                    if (connectedCount == 4) {
-                        return true;
-                    }
-                } else {
-                    connectedCount = 0;
-                }
-            }
+    //@ ensures \result == (discCount == SLOTS);
+    public boolean isFull() {
+        return discCount == SLOTS;
+    }
+
+    /**
+     * Sets a slot to the specified disc.
+     * @param column The index of the column
+     * @param row The index of the row
+     * @param disc The disc to place in the slot
+     */
+    //@ requires column >= 0 && column < COLUMNS;
+    //@ requires row >= 0 && row < ROWS;
+    //@ requires disc != null;
+    //@ ensures getSlot(column, row) == disc;
+    public void setSlot(int column, int row, Disc disc) {
+        if (column < 0 || column >= COLUMNS) {
+            throw new ArgumentOutOfRangeException("column", 0, COLUMNS);
         }
+        if (row < 0 || row >= ROWS) {
+            throw new ArgumentOutOfRangeException("row", 0, ROWS);
+        }
+
+        placeDisc(column, row, disc);
 
-        return false;
+        // An arbitrary slot may have been overwritten or cleared, which can both create and break
+        // sequences of either color. Re-evaluate the winner from scratch.
+        winner = findWinner();
     }
 
     /**
-     * Checks if the given color has won with a vertical sequence.
-     * @param disc The color of the disc to check
+     * Sets a slot to the specified disc and updates the column height and disc count, but not the
+     * winner.
+     * @param column The index of the column
+     * @param row The index of the row
+     * @param disc The disc to place in the slot
      */
-    /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    private boolean hasVerticalWin(Disc disc) {
-        //@ loop_invariant 0 <= column && column <= COLUMNS;
-        for (int column = 0; column < COLUMNS; column++) {
-            int connectedCount = 0;
-
-            //@ loop_invariant 0 <= connectedCount && connectedCount <= 4;
-            //@ loop_invariant 0 <= row && row <= ROWS;
-            for (int row = 0; row < ROWS; row++) {
-                if (getSlot(column, row) == disc) {
-                    connectedCount++;
-
-                    if (connectedCount == 4) {
-                        return true;
-                    }
-                } else {
-                    connectedCount = 0;
-                }
-            }
+    //@ requires column >= 0 && column < COLUMNS;
+    //@ requires row >= 0 && row < ROWS;
+    //@ requires disc != null;
+    //@ ensures getSlot(column, row) == disc;
+    private void placeDisc(int column, int row, Disc disc) {
+        if (row < 0) {
+            throw new ArgumentOutOfRangeException("row", 0, ROWS);
+        }
+
+        int position = getPosition(column, row);
+        long bit = 1L << position;
+        boolean wasEmpty = ((redDiscs | yellowDiscs) & bit) == 0;
+
+        if (wasEmpty && disc != Disc.None) {
+            discCount++;
+        } else if (!wasEmpty && disc == Disc.None) {
+            discCount--;
+        }
+
+        // Remove the key of the disc currently in the slot from the hash, if there is one.
+        if ((redDiscs & bit) != 0) {
+            hash ^= ZOBRIST_KEYS[position];
+        } else if ((yellowDiscs & bit) != 0) {
+            hash ^= ZOBRIST_KEYS[BOARD_BITS + position];
+        }
+
+        redDiscs &= ~bit;
+        yellowDiscs &= ~bit;
+
+        if (disc == Disc.Red) {
+            redDiscs |= bit;
+            hash ^= ZOBRIST_KEYS[position];
+        } else if (disc == Disc.Yellow) {
+            yellowDiscs |= bit;
+            hash ^= ZOBRIST_KEYS[BOARD_BITS + position];
         }
 
-        return false;
+        // The column height is determined by the topmost disc, which keeps the same semantics for
+        // getNextFreeSlot as scanning the column from the top would have.
+        long columnDiscs = ((redDiscs | yellowDiscs) >>> (column * COLUMN_BITS)) & COLUMN_MASK;
+        heights[column] = Long.SIZE - Long.numberOfLeadingZeros(columnDiscs);
     }
 
     /**
-     * Checks if the given color has won with a diagonal sequence.
-     * @param disc The color of the disc to check
+     * Checks if a column has a free slot.
+     * @param column The column to check
      */
     /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    /*@ ensures 
-        \result == checkDiagonalLeftToRight(disc) || \result == checkDiagonalRightToLeft(disc);
-      @*/
-    private boolean hasDiagonalWin(Disc disc) {
-        return checkDiagonalLeftToRight(disc) || checkDiagonalRightToLeft(disc);
+    //@ requires column >= 0 && column < COLUMNS;
+    //@ ensures \result == heights[column] < ROWS;
+    private boolean hasFreeSlot(int column) {
+        assert column >= 0 && column < COLUMNS;
+
+        return heights[column] < ROWS;
     }
 
-    /*
-     * 3456XXX
-     * 23456XX
-     * 123456X
-     * X123456
-     * XX12345
-     * XXX1234
-     */
     /**
-     * Checks if the given color has won with a diagonal sequence from the top-left to the
-     * bottom-right.
-     * @param disc The color of the disc to check
+     * Notifies the observers of this board that the board has changed.
      */
-    /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    private boolean checkDiagonalLeftToRight(Disc disc) {
-        int scanLines = ROWS - 3 + COLUMNS - 4;
-
-        //@ loop_invariant 0 <= i && i <= scanLines;
-        for (int i = 0; i < scanLines; i++) {
-            int column = 0;
-            int row = ROWS - 4 - i;
-
-            if (row < 0) {
-                column = -row;
-                row = 0;
-            }
-
-            if (checkDiagonalLeftToRight(disc, column, row)) {
-                return true;
-            }
+    private void notifyChanged() {
+        // Observable copies its list of observers on every notification. Skip it when there is
+        // nobody to notify, which is the case for boards that are only used for searching.
+        if (countObservers() > 0) {
+            setChanged();
+            notifyObservers();
         }
-        return false;
     }
 
     /**
-     * Checks if the given color has won with a diagonal sequence from the top-left to the
-     * bottom-right starting at a given column and row.
-     * @param disc The color of the disc to check
-     * @param startColumn The column to start checking from
-     * @param startRow The row to start checking from
+     * Returns the disc color that has four connected discs on the board, or Disc.None if neither
+     * has.
      */
     /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    //@ requires startColumn >= 0 && startColumn < COLUMNS;
-    //@ requires startRow >= 0 && startRow < ROWS;
-    private boolean checkDiagonalLeftToRight(Disc disc, int startColumn, int startRow) {
-        int connectedCount = 0;
-        int column = startColumn;
-        int row = startRow;
-
-        //@ loop_invariant 0 <= column && column <= COLUMNS;
-        //@ loop_invariant 0 <= row && row <= ROWS;
-        //@ loop_invariant 0 <= connectedCount && connectedCount <= 4;
-        while (column < COLUMNS && row < ROWS) {
-            if (getSlot(column, row) == disc) {
-                connectedCount++;
-
-                if (connectedCount == 4) {
-                    return true;
-                }
-            } else {
-                connectedCount = 0;
-            }
-
-            column++;
-            row++;
+    private Disc findWinner() {
+        if (connectsFour(yellowDiscs)) {
+            return Disc.Yellow;
+        } else if (connectsFour(redDiscs)) {
+            return Disc.Red;
         }
 
-        return false;
+        return Disc.None;
     }
 
-    /*
-     * XXX6543
-     * XX65432
-     * X654321
-     * 654321X
-     * 54321XX
-     * 4321XXX
-     */
     /**
-     * Checks if the given color has won with a diagonal sequence from the top-right to the
-     * bottom-left.
-     * @param disc The color of the disc to check
+     * Checks if a bitboard contains four connected discs in any direction.
+     * @param discs The bitboard to check
      */
     /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    private boolean checkDiagonalRightToLeft(Disc disc) {
-        int scanLines = ROWS - 3 + COLUMNS - 4;
-
-        //@ loop_invariant 0 <= i && i <= scanLines;
-        for (int i = 0; i < scanLines; i++) {
-            int column = COLUMNS - 1;
-            int row = ROWS - 3 - i;
-
-            if (row < 0) {
-                column = COLUMNS - 1 + row;
-                row = 0;
-            }
-
-            if (checkDiagonalRightToLeft(disc, column, row)) {
-                return true;
-            }
-        }
-
-        return false;
+    private static boolean connectsFour(long discs) {
+        // Each step (vertical, horizontal and both diagonals) is the bit distance between two
+        // adjacent slots in that direction. ANDing the bitboard with itself shifted by one step
+        // leaves the bits that start a sequence of two, doing the same on that result with two
+        // steps leaves the bits that start a sequence of four.
+        return hasSequence(discs, 1) || hasSequence(discs, COLUMN_BITS)
+                || hasSequence(discs, COLUMN_BITS - 1) || hasSequence(discs, COLUMN_BITS + 1);
     }
 
     /**
-     * Checks if the given color has won with a diagonal sequence from the top-right to the
-     * bottom-left starting at a given column and row.
-     * @param disc The color of the disc to check
-     * @param startColumn The column to start checking from
-     * @param startRow The row to start checking from
+     * Checks if a bitboard contains four connected discs with the given bit distance between them.
+     * @param discs The bitboard to check
+     * @param step The bit distance between two adjacent slots
      */
     /*@ pure */
-    //@ requires disc != null && disc != Disc.None;
-    //@ requires startColumn >= 0 && startColumn < COLUMNS;
-    //@ requires startRow >= 0 && startRow < ROWS;
-    private boolean checkDiagonalRightToLeft(Disc disc, int startColumn, int startRow) {
-        int connectedCount = 0;
-        int column = startColumn;
-        int row = startRow;
+    private static boolean hasSequence(long discs, int step) {
+        long pairs = discs & (discs >>> step);
 
-        //@ loop_invariant 0 <= column && column <= COLUMNS;
-        //@ loop_invariant 0 <= row && row <= ROWS;
-        //@ loop_invariant 0 <= connectedCount && connectedCount <= 4;
-        while (column >= 0 && row < ROWS) {
-            if (getSlot(column, row) == disc) {
-                connectedCount++;
-
-                if (connectedCount == 4) {
-                    return true;
-                }
-            } else {
-                connectedCount = 0;
-            }
-
-            column--;
-            row++;
-        }
+        return (pairs & (pairs >>> (2 * step))) != 0;
+    }
 
-        return false;
+    /**
+     * Returns the bitboard with only the bit of the given slot set.
+     * @param column The index of the column
+     * @param row The index of the row
+     */
+    /*@ pure */
+    //@ requires column >= 0 && column < COLUMNS;
+    //@ requires row >= 0 && row < ROWS;
+    private static long getBit(int column, int row) {
+        return 1L << getPosition(column, row);
     }
 
     /**
-     * Sets a slot to the specified disc.
+     * Returns the position of the bit of the given slot.
      * @param column The index of the column
      * @param row The index of the row
-     * @param disc The disc to place in the slot
      */
-    //@ requires column >= 0 && column < COLUMS;
+    /*@ pure */
+    //@ requires column >= 0 && column < COLUMNS;
     //@ requires row >= 0 && row < ROWS;
-    //@ requires disc != null;
-    //@ ensures grid[row * COLUMNS + column] == disc;
-    public void setSlot(int column, int row, Disc disc) {
-        assert column >= 0 && column < COLUMNS;
-        assert row >= 0 && row < ROWS;
+    //@ ensures \result >= 0 && \result < BOARD_BITS;
+    private static int getPosition(int column, int row) {
+        return column * COLUMN_BITS + ROWS - 1 - row;
+    }
+
+    /**
+     * Computes the bitboard with all playable slots set.
+     */
+    /*@ pure */
+    private static long computeBoardMask() {
+        long mask = 0;
+
+        //@ loop_invariant 0 <= column && column <= COLUMNS;
+        for (int column = 0; column < COLUMNS; column++) {
+            mask |= COLUMN_MASK << (column * COLUMN_BITS);
+        }
 
-        grid[row * COLUMNS + column] = disc;
+        return mask;
     }
 
     /**
-     * Checks if a column has a free slot.
-     * @param column The column to check
+     * Computes the Zobrist keys for both disc colors.
      */
     /*@ pure */
-    //@ requires column >= 0 && column < COLUMNS;
-    //@ ensures \result == getSlot(column, 0) == Disc.None;
-    private boolean hasFreeSlot(int column) {
-        assert column >= 0 && column < COLUMNS;
+    private static long[] computeZobristKeys() {
+        Random random = new Random(ZOBRIST_SEED);
+        long[] keys = new long[2 * BOARD_BITS];
+
+        //@ loop_invariant 0 <= i && i <= keys.length;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
 
-        return getSlot(column, 0) == Disc.None;
+        return keys;
     }
 }
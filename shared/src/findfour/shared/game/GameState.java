@@ -6,10 +6,14 @@ public final class GameState {
     public static final Disc STARTING_COLOR = Disc.Red;
 
     private final Board board;
+    // The columns of all moves made so far, in order, so that they can be undone.
+    private final byte[] moves;
+    private int moveCount;
     private Disc currentTurn;
 
     public GameState() {
         this.board = new Board();
+        this.moves = new byte[Board.COLUMNS * Board.ROWS];
 
         // Set the game state to the initial state.
         reset();
@@ -17,11 +21,14 @@ public final class GameState {
 
     public void reset() {
         currentTurn = STARTING_COLOR;
+        moveCount = 0;
         board.clear();
     }
 
     public void syncTo(GameState state) {
         this.board.syncTo(state.board);
+        System.arraycopy(state.moves, 0, this.moves, 0, state.moveCount);
+        this.moveCount = state.moveCount;
         this.currentTurn = state.currentTurn;
     }
 
@@ -35,9 +42,23 @@ public final class GameState {
         }
 
         board.makeMove(column, disc);
+        moves[moveCount++] = (byte) column;
         swapTurns();
     }
 
+    public void undo() {
+        if (moveCount == 0) {
+            throw new IllegalStateException("There is no move to undo.");
+        }
+
+        board.undoMove(moves[--moveCount]);
+        swapTurns();
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
     public boolean isGameOver() {
         return board.isGameOver();
     }
@@ -0,0 +1,180 @@
+package findfour.shared.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * A client connection on a non-blocking channel, which is read and written by a SelectorLoop.
+ * <p>
+ * Received data is decoded by the PacketDecoder of the client. Sent packets are queued and
+ * written by the selector loop, so a slow client never blocks the sender. All packets that are
+ * queued by the time the loop gets to write are written at once with a single gathering write.
+ * @author ciske
+ *
+ */
+class ChannelClient extends TcpServer.Client {
+    private static final int READ_BUFFER_SIZE = 1 << 12;
+
+    private final SocketChannel channel;
+    private final SelectorLoop loop;
+    private final ByteBuffer readBuffer;
+    private final Queue<ByteBuffer> pendingWrites;
+    // Reused to pass the queued packets to a gathering write.
+    private ByteBuffer[] writeBatch;
+    private volatile SelectionKey key;
+
+    public ChannelClient(SocketChannel argChannel, SelectorLoop argLoop, int argSendQueueLimit,
+            OverflowPolicy argOverflowPolicy) throws IOException {
+        super(argChannel.socket().getRemoteSocketAddress(), argSendQueueLimit, argOverflowPolicy);
+
+        this.channel = argChannel;
+        this.loop = argLoop;
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.pendingWrites = new ArrayDeque<ByteBuffer>();
+        this.writeBatch = new ByteBuffer[1];
+
+        argChannel.configureBlocking(false);
+    }
+
+    @Override
+    public void startReceiving() {
+        loop.register(this);
+    }
+
+    @Override
+    public void send(ByteBuffer packet) {
+        // The packet may be shared with other clients, which each need their own position.
+        ByteBuffer buffer = packet.duplicate();
+        boolean wasEmpty;
+
+        synchronized (pendingWrites) {
+            if (pendingWrites.size() >= getSendQueueLimit()) {
+                wasEmpty = false;
+                buffer = null;
+            } else {
+                wasEmpty = pendingWrites.isEmpty();
+                pendingWrites.add(buffer);
+            }
+        }
+
+        // Apply the policy outside of the lock, as the handlers of the events that are raised can
+        // send to other clients.
+        if (buffer == null) {
+            sendQueueOverflowed();
+        } else if (wasEmpty) {
+            // A write is only requested for the first packet, the packets that are queued before
+            // the loop gets to it are written along with it.
+            loop.requestWrite(this);
+        }
+    }
+
+    /**
+     * Returns the channel of this client.
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Sets the key of this client's channel, once it is registered with the selector.
+     * @param argKey The selection key
+     */
+    void setKey(SelectionKey argKey) {
+        this.key = argKey;
+    }
+
+    /**
+     * Reads all available data and raises an event for every complete packet or frame. Called by
+     * the selector loop once the channel is readable.
+     */
+    void handleRead() {
+        int read;
+
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            disconnect();
+            return;
+        }
+
+        if (read == -1) {
+            disconnect();
+            return;
+        }
+
+        readBuffer.flip();
+
+        if (!decode(readBuffer)) {
+            disconnect();
+        }
+
+        readBuffer.clear();
+    }
+
+    /**
+     * Writes as much of the queued data as the channel accepts, and waits for the channel to
+     * become writable if anything is left. Called by the selector loop when a write is requested
+     * and once the channel is writable.
+     */
+    void handleWrite() {
+        String failure = null;
+
+        synchronized (pendingWrites) {
+            // The client is not registered yet, the loop writes once it is.
+            if (key == null || !key.isValid()) {
+                return;
+            }
+
+            try {
+                writeQueuedPackets();
+            } catch (IOException e) {
+                failure = e.getMessage();
+            }
+
+            if (failure == null) {
+                key.interestOps(pendingWrites.isEmpty() ? SelectionKey.OP_READ
+                        : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        if (failure != null) {
+            sendFailed(failure);
+        }
+    }
+
+    @Override
+    protected void close() throws IOException {
+        if (key != null) {
+            key.cancel();
+        }
+
+        channel.close();
+    }
+
+    private void writeQueuedPackets() throws IOException {
+        int count = pendingWrites.size();
+
+        if (count == 0) {
+            return;
+        }
+
+        if (writeBatch.length < count) {
+            writeBatch = new ByteBuffer[Math.max(count, writeBatch.length * 2)];
+        }
+
+        pendingWrites.toArray(writeBatch);
+        channel.write(writeBatch, 0, count);
+
+        while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+            pendingWrites.remove();
+        }
+
+        // Don't keep the written packets reachable.
+        Arrays.fill(writeBatch, 0, count, null);
+    }
+}
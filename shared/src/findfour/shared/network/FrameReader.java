@@ -0,0 +1,114 @@
+package findfour.shared.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the fields of a received binary frame, in the format written by FrameWriter. An instance
+ * is meant to be reused for every frame of a connection.
+ * @author ciske
+ *
+ */
+public final class FrameReader {
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_CONTINUE = 0x80;
+    // An int takes at most 5 bytes.
+    private static final int MAX_VARINT_SHIFT = 28;
+
+    private ByteBuffer frame;
+
+    public FrameReader() {
+        this.frame = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Starts reading a frame.
+     * @param argFrame The payload of the frame, as received with the frame received event
+     * @return The opcode of the frame
+     * @throws MalformedFrameException If the frame does not start with an opcode
+     */
+    //@ requires argFrame != null;
+    public int read(ByteBuffer argFrame) {
+        this.frame = argFrame;
+
+        return readVarInt();
+    }
+
+    /**
+     * Reads a variable length integer.
+     * @throws MalformedFrameException If the frame does not contain a valid varint
+     */
+    public int readVarInt() {
+        int result = 0;
+
+        for (int shift = 0; shift <= MAX_VARINT_SHIFT; shift += VARINT_BITS) {
+            if (!frame.hasRemaining()) {
+                throw new MalformedFrameException("Frame ends within a varint");
+            }
+
+            int b = frame.get() & 0xFF;
+
+            result |= (b & VARINT_MASK) << shift;
+
+            if ((b & VARINT_CONTINUE) == 0) {
+                if (result < 0) {
+                    throw new MalformedFrameException("Varint is out of range");
+                }
+
+                return result;
+            }
+        }
+
+        throw new MalformedFrameException("Varint is too long");
+    }
+
+    /**
+     * Reads a boolean.
+     * @throws MalformedFrameException If the frame does not contain a valid boolean
+     */
+    public boolean readBoolean() {
+        int value = readVarInt();
+
+        if (value > 1) {
+            throw new MalformedFrameException("Boolean must be 0 or 1");
+        }
+
+        return value == 1;
+    }
+
+    /**
+     * Reads a string.
+     * @throws MalformedFrameException If the frame does not contain a valid string
+     */
+    public String readString() {
+        int length = readVarInt();
+
+        if (length > frame.remaining()) {
+            throw new MalformedFrameException("Frame ends within a string");
+        }
+
+        if (frame.hasArray()) {
+            String result = new String(frame.array(), frame.arrayOffset() + frame.position(),
+                    length, FrameWriter.CHARSET);
+
+            frame.position(frame.position() + length);
+
+            return result;
+        }
+
+        // Read-only buffers don't give access to their array.
+        byte[] bytes = new byte[length];
+
+        frame.get(bytes);
+
+        return new String(bytes, FrameWriter.CHARSET);
+    }
+
+    /**
+     * Returns whether the frame contains more data after the fields that have been read.
+     */
+    /*@ pure */
+    public boolean hasRemaining() {
+        return frame.hasRemaining();
+    }
+}
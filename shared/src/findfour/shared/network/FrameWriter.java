@@ -0,0 +1,142 @@
+package findfour.shared.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import findfour.shared.ArgumentOutOfRangeException;
+
+/**
+ * Builds a binary frame, which is sent as a variable length integer with the length of the
+ * payload followed by the payload. The payload starts with the opcode of the frame followed by its
+ * fields, which are either variable length integers or strings.
+ * <p>
+ * Variable length integers (varints) store 7 bits per byte, least significant bits first, and
+ * set the highest bit of every byte but the last. Small values, like columns and player ids, take
+ * a single byte. Strings are sent as the varint length of their UTF-8 encoding followed by the
+ * encoded bytes.
+ * @author ciske
+ *
+ */
+public final class FrameWriter {
+    /**
+     * The maximum length of the payload of a frame in bytes.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = PacketDecoder.MAX_PACKET_LENGTH;
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    // The length prefix of a frame never takes more than 3 bytes, space for it is reserved at the
+    // start of the buffer so the payload does not have to be copied once its length is known.
+    private static final int PREFIX_SPACE = 3;
+    private static final int INITIAL_SIZE = 32;
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_CONTINUE = 0x80;
+
+    private byte[] buffer;
+    private int length;
+
+    /**
+     * Starts a new frame.
+     * @param opcode The opcode of the frame
+     */
+    //@ requires opcode >= 0;
+    public FrameWriter(int opcode) {
+        this.buffer = new byte[INITIAL_SIZE];
+        this.length = PREFIX_SPACE;
+
+        writeVarInt(opcode);
+    }
+
+    /**
+     * Appends a variable length integer to the frame.
+     * @param value The value, which must not be negative
+     * @return This writer
+     */
+    //@ requires value >= 0;
+    public FrameWriter writeVarInt(int value) {
+        if (value < 0) {
+            throw new ArgumentOutOfRangeException("value", 0, Integer.MAX_VALUE);
+        }
+
+        int remaining = value;
+
+        while (remaining > VARINT_MASK) {
+            append((byte) ((remaining & VARINT_MASK) | VARINT_CONTINUE));
+            remaining >>>= VARINT_BITS;
+        }
+
+        append((byte) remaining);
+
+        return this;
+    }
+
+    /**
+     * Appends a boolean to the frame, which is sent as the varint 0 or 1.
+     * @param value The value
+     * @return This writer
+     */
+    public FrameWriter writeBoolean(boolean value) {
+        return writeVarInt(value ? 1 : 0);
+    }
+
+    /**
+     * Appends a string to the frame.
+     * @param value The value
+     * @return This writer
+     */
+    //@ requires value != null;
+    public FrameWriter writeString(String value) {
+        byte[] bytes = value.getBytes(CHARSET);
+
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+
+        return this;
+    }
+
+    /**
+     * Finishes the frame.
+     * @return A read-only buffer with the length prefix and the payload, which can be sent with
+     * TcpServer.Client.send or TcpClient.send
+     */
+    public ByteBuffer toFrame() {
+        int payloadLength = length - PREFIX_SPACE;
+
+        if (payloadLength > MAX_PAYLOAD_LENGTH) {
+            throw new ArgumentOutOfRangeException("payload length", 0, MAX_PAYLOAD_LENGTH + 1);
+        }
+
+        // Write the prefix right in front of the payload.
+        int prefixLength = 1;
+
+        for (int i = payloadLength >>> VARINT_BITS; i > 0; i >>>= VARINT_BITS) {
+            prefixLength++;
+        }
+
+        int start = PREFIX_SPACE - prefixLength;
+        int remaining = payloadLength;
+
+        for (int i = start; i < PREFIX_SPACE - 1; i++) {
+            buffer[i] = (byte) ((remaining & VARINT_MASK) | VARINT_CONTINUE);
+            remaining >>>= VARINT_BITS;
+        }
+
+        buffer[PREFIX_SPACE - 1] = (byte) remaining;
+
+        return ByteBuffer.wrap(buffer, start, length - start).slice().asReadOnlyBuffer();
+    }
+
+    private void append(byte b) {
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package findfour.shared.network;
+
+/**
+ * Represents the ways in which a TcpServer can handle the connections of its clients.
+ * @author ciske
+ *
+ */
+public enum IoMode {
+    /**
+     * Every client gets its own thread which blocks while waiting for data.
+     */
+    Blocking,
+    /**
+     * All clients are handled by a small number of threads, which use selectors to wait for data
+     * on many non-blocking channels at once.
+     */
+    Selector,
+    /**
+     * Every client gets its own virtual thread which blocks while waiting for data. Virtual threads
+     * are cheap enough to have one per client for many thousands of clients. This requires Java 21
+     * or later, on older versions platform threads are used, as in the Blocking mode.
+     */
+    Virtual;
+
+}
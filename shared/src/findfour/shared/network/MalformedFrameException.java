@@ -0,0 +1,20 @@
+package findfour.shared.network;
+
+/**
+ * Defines an exception which is thrown when a binary frame does not contain the fields it should
+ * contain, or contains invalid values.
+ * @author ciske
+ * 
+ */
+public class MalformedFrameException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new <code>MalformedFrameException</code> instance.
+     * @param message The message of the exception that describes why the frame is malformed.
+     */
+    public MalformedFrameException(String message) {
+        super(message);
+    }
+
+}
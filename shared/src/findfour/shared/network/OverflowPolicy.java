@@ -0,0 +1,19 @@
+package findfour.shared.network;
+
+/**
+ * Represents what a TcpServer does when a packet is sent to a client whose send queue is full,
+ * which happens when the client does not read its data as fast as the server sends it.
+ * @author ciske
+ *
+ */
+public enum OverflowPolicy {
+    /**
+     * The packet is dropped and a send failed event is raised, but the client stays connected.
+     */
+    Drop,
+    /**
+     * The client is disconnected.
+     */
+    Disconnect;
+
+}
@@ -0,0 +1,178 @@
+package findfour.shared.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits received data into packets. Connections start out receiving text packets, which are
+ * lines ending in the same terminators BufferedReader.readLine accepts. After the handshake a
+ * connection can switch to binary frames, each of which is prefixed by its length as a varint
+ * (see FrameWriter).
+ * <p>
+ * The switch is made by the listener while it handles the line that negotiates it, so that the
+ * data following that line is decoded as frames. If that line ends in a carriage return, a
+ * directly following line feed is still skipped, so it must not end in a bare carriage return.
+ * @author ciske
+ *
+ */
+final class PacketDecoder {
+    /**
+     * The maximum length of a packet in bytes. A peer which sends longer packets has to be
+     * disconnected, as it would otherwise be able to make us buffer an unlimited amount of data.
+     */
+    static final int MAX_PACKET_LENGTH = 1 << 16;
+
+    private static final int INITIAL_PACKET_SIZE = 128;
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_CONTINUE = 0x80;
+
+    private final Listener listener;
+    private volatile boolean binary;
+    // The bytes of the packet that is currently being received.
+    private byte[] packet;
+    private int packetLength;
+    // Passed to the listener for every frame, wraps the packet array.
+    private ByteBuffer frameView;
+    // Whether a line feed directly following a carriage return should be skipped, as the two
+    // together terminate a single line.
+    private boolean skipLineFeed;
+    // The length of the frame that is currently being received, or -1 while its length prefix is
+    // being received.
+    private int frameLength;
+    private int prefixValue;
+    private int prefixShift;
+
+    public PacketDecoder(Listener argListener) {
+        this.listener = argListener;
+        this.packet = new byte[INITIAL_PACKET_SIZE];
+        this.frameView = ByteBuffer.wrap(packet);
+        this.frameLength = -1;
+    }
+
+    /**
+     * Switches to decoding binary frames, starting with the data following the current packet.
+     */
+    public void setBinary() {
+        binary = true;
+    }
+
+    /*@ pure */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Decodes the data in a buffer, calling the listener for every complete packet. Incomplete
+     * packets are kept until the rest of their data is decoded.
+     * @param input The received data, which is consumed
+     * @return False if the data is invalid and the connection has to be closed
+     */
+    public boolean decode(ByteBuffer input) {
+        while (input.hasRemaining() && listener.isReceiving()) {
+            byte b = input.get();
+            boolean valid;
+
+            if (b == '\n' && skipLineFeed) {
+                skipLineFeed = false;
+                valid = true;
+            } else if (binary) {
+                skipLineFeed = false;
+                valid = decodeFrameByte(b);
+            } else {
+                valid = decodeLineByte(b);
+            }
+
+            if (!valid) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean decodeLineByte(byte b) {
+        if (b == '\n' || b == '\r') {
+            skipLineFeed = b == '\r';
+
+            String line = new String(packet, 0, packetLength, CHARSET);
+
+            packetLength = 0;
+            listener.lineDecoded(line);
+
+            return true;
+        }
+
+        skipLineFeed = false;
+
+        return append(b);
+    }
+
+    private boolean decodeFrameByte(byte b) {
+        if (frameLength == -1) {
+            prefixValue |= (b & VARINT_MASK) << prefixShift;
+            prefixShift += VARINT_BITS;
+
+            if ((b & VARINT_CONTINUE) != 0) {
+                // Any prefix longer than needed for the maximum length is invalid.
+                return prefixValue <= MAX_PACKET_LENGTH && (1 << prefixShift) <= MAX_PACKET_LENGTH;
+            }
+
+            if (prefixValue > MAX_PACKET_LENGTH) {
+                return false;
+            }
+
+            frameLength = prefixValue;
+            prefixValue = 0;
+            prefixShift = 0;
+        } else if (!append(b)) {
+            return false;
+        }
+
+        if (packetLength == frameLength) {
+            frameView.limit(packetLength);
+            frameView.position(0);
+            packetLength = 0;
+            frameLength = -1;
+            listener.frameDecoded(frameView);
+        }
+
+        return true;
+    }
+
+    private boolean append(byte b) {
+        if (packetLength == packet.length) {
+            if (packetLength == MAX_PACKET_LENGTH) {
+                return false;
+            }
+
+            packet = Arrays.copyOf(packet, Math.min(packet.length * 2, MAX_PACKET_LENGTH));
+            frameView = ByteBuffer.wrap(packet);
+        }
+
+        packet[packetLength++] = b;
+
+        return true;
+    }
+
+    /**
+     * Receives the packets that are decoded.
+     */
+    interface Listener {
+        /**
+         * Returns whether decoding should continue, which it should not once the connection is
+         * closed.
+         */
+        boolean isReceiving();
+
+        void lineDecoded(String line);
+
+        /**
+         * Handles a frame. The buffer holds the payload and is only valid until this method
+         * returns.
+         */
+        void frameDecoded(ByteBuffer frame);
+    }
+}
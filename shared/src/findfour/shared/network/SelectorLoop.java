@@ -0,0 +1,146 @@
+package findfour.shared.network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread which handles the reads and writes of many ChannelClients using a single selector.
+ * <p>
+ * Only this thread touches the selector. Other threads hand over new clients and write requests
+ * through queues and wake the selector up, which is then handled before the next select.
+ * @author ciske
+ *
+ */
+class SelectorLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<ChannelClient> pendingRegistrations;
+    private final Queue<ChannelClient> pendingWrites;
+    private final Thread thread;
+    private volatile boolean keepRunning;
+
+    public SelectorLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.pendingRegistrations = new ConcurrentLinkedQueue<ChannelClient>();
+        this.pendingWrites = new ConcurrentLinkedQueue<ChannelClient>();
+        this.thread = new Thread(this, name);
+        this.keepRunning = true;
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        keepRunning = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Starts reading from a client on this loop.
+     * @param client The client, which must be created for this loop
+     */
+    public void register(ChannelClient client) {
+        pendingRegistrations.add(client);
+        selector.wakeup();
+    }
+
+    /**
+     * Requests the loop to write the queued data of a client.
+     * @param client The client, which must be created for this loop
+     */
+    public void requestWrite(ChannelClient client) {
+        pendingWrites.add(client);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (keepRunning) {
+                selector.select();
+
+                registerPendingClients();
+                writePendingClients();
+                handleSelectedKeys();
+            }
+        } catch (IOException e) {
+            // The selector failed, which leaves no way to handle the clients of this loop.
+            e.getMessage();
+        } catch (ClosedSelectorException e) {
+            e.getMessage();
+        } finally {
+            closeSelector();
+        }
+    }
+
+    private void registerPendingClients() {
+        ChannelClient client;
+
+        while ((client = pendingRegistrations.poll()) != null) {
+            try {
+                client.setKey(client.getChannel().register(selector, SelectionKey.OP_READ,
+                        client));
+                // Write the packets that were sent before the client was registered.
+                client.handleWrite();
+            } catch (IOException e) {
+                // The client disconnected before it could be registered.
+                client.disconnect();
+            }
+        }
+    }
+
+    private void writePendingClients() {
+        ChannelClient client;
+
+        while ((client = pendingWrites.poll()) != null) {
+            try {
+                client.handleWrite();
+            } catch (CancelledKeyException e) {
+                client.disconnect();
+            }
+        }
+    }
+
+    private void handleSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            ChannelClient client = (ChannelClient) key.attachment();
+
+            keys.remove();
+
+            try {
+                if (key.isWritable()) {
+                    client.handleWrite();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    client.handleRead();
+                }
+            } catch (CancelledKeyException e) {
+                // The client was disconnected by another thread while it was being handled.
+                client.disconnect();
+            }
+        }
+    }
+
+    private void closeSelector() {
+        // Disconnect the clients that are still registered, they can no longer be handled.
+        for (SelectionKey key : selector.keys().toArray(new SelectionKey[0])) {
+            ((ChannelClient) key.attachment()).disconnect();
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // There is no sensible thing to do when the selector fails to close.
+            e.getMessage();
+        }
+    }
+}
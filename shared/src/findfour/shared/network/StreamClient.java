@@ -0,0 +1,172 @@
+package findfour.shared.network;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A client connection which receives on its own thread, blocking while waiting for data. Sent
+ * packets are queued and written by a task on the server's send executor, so a slow client never
+ * blocks the sender. The task writes every packet that is queued by the time it runs and flushes
+ * once for all of them.
+ * @author ciske
+ *
+ */
+class StreamClient extends TcpServer.Client implements Runnable {
+    private static final int READ_BUFFER_SIZE = 1 << 12;
+
+    private final Socket socket;
+    private final InputStream input;
+    // Wraps the read buffer to pass the received bytes to the decoder.
+    private final ByteBuffer readBuffer;
+    private final BufferedOutputStream output;
+    // Writes buffers to the output stream, which can't take a read-only buffer directly.
+    private final WritableByteChannel outputChannel;
+    private final boolean virtualThread;
+    private final Executor sendExecutor;
+    private final Queue<ByteBuffer> pendingPackets;
+    private final Runnable sendTask;
+    // Whether the send task is submitted and has not finished yet, guarded by pendingPackets.
+    private boolean sending;
+
+    public StreamClient(Socket argSocket, boolean argVirtualThread, Executor argSendExecutor,
+            int argSendQueueLimit, OverflowPolicy argOverflowPolicy) throws IOException {
+        super(argSocket.getRemoteSocketAddress(), argSendQueueLimit, argOverflowPolicy);
+
+        this.socket = argSocket;
+        this.input = argSocket.getInputStream();
+        this.readBuffer = ByteBuffer.wrap(new byte[READ_BUFFER_SIZE]);
+        this.output = new BufferedOutputStream(argSocket.getOutputStream());
+        this.outputChannel = Channels.newChannel(output);
+        this.virtualThread = argVirtualThread;
+        this.sendExecutor = argSendExecutor;
+        this.pendingPackets = new ArrayDeque<ByteBuffer>();
+        this.sendTask = new Runnable() {
+            @Override
+            public void run() {
+                writePendingPackets();
+            }
+        };
+    }
+
+    @Override
+    public void startReceiving() {
+        String name = String.format("TcpServer-client%d-receive", this.hashCode());
+
+        VirtualThreads.newThread(this, name, virtualThread).start();
+    }
+
+    @Override
+    public void send(ByteBuffer packet) {
+        boolean overflowed = false;
+        boolean startSending = false;
+
+        synchronized (pendingPackets) {
+            if (pendingPackets.size() >= getSendQueueLimit()) {
+                overflowed = true;
+            } else {
+                // The packet may be shared with other clients, which each need their own position.
+                pendingPackets.add(packet.duplicate());
+                startSending = !sending;
+                sending = true;
+            }
+        }
+
+        // Apply the policy outside of the lock, as the handlers of the events that are raised can
+        // send to other clients.
+        if (overflowed) {
+            sendQueueOverflowed();
+        } else if (startSending) {
+            try {
+                sendExecutor.execute(sendTask);
+            } catch (RejectedExecutionException e) {
+                // The server stopped while the packet was being sent.
+                sendFailed(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = readBuffer.array();
+        int read;
+
+        while (isConnected()) {
+            try {
+                read = input.read(buffer);
+
+                if (read == -1) {
+                    disconnect();
+                } else {
+                    readBuffer.clear();
+                    readBuffer.limit(read);
+
+                    if (!decode(readBuffer)) {
+                        disconnect();
+                    }
+                }
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+    }
+
+    @Override
+    protected void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Writes the queued packets until the queue is empty. Only one send task runs at a time, so
+     * writes never interleave.
+     */
+    private void writePendingPackets() {
+        ByteBuffer packet;
+
+        try {
+            while ((packet = nextPacket()) != null) {
+                while (packet.hasRemaining()) {
+                    outputChannel.write(packet);
+                }
+
+                // Only flush once the packets that were queued in the meantime are written too.
+                if (isQueueEmpty()) {
+                    output.flush();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (pendingPackets) {
+                pendingPackets.clear();
+                sending = false;
+            }
+
+            sendFailed(e.getMessage());
+        }
+    }
+
+    private ByteBuffer nextPacket() {
+        synchronized (pendingPackets) {
+            ByteBuffer packet = pendingPackets.poll();
+
+            if (packet == null) {
+                sending = false;
+            }
+
+            return packet;
+        }
+    }
+
+    private boolean isQueueEmpty() {
+        synchronized (pendingPackets) {
+            return pendingPackets.isEmpty();
+        }
+    }
+}
@@ -7,6 +7,9 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 public class TcpClient extends EventRaiser implements Runnable {
     public static final int EVENT_CONNECTED = 0;
@@ -14,24 +17,67 @@ public class TcpClient extends EventRaiser implements Runnable {
     public static final int EVENT_DISCONNECTED = 2;
     public static final int EVENT_PACKET_RECEIVED = 3;
     public static final int EVENT_SEND_FAILED = 4;
+    public static final int EVENT_FRAME_RECEIVED = 5;
+
+    private static final int READ_BUFFER_SIZE = 1 << 12;
 
     private Socket socket;
     private SocketAddress address;
-    //private InputStream input;
-    private BufferedReader input;
-    //private OutputStream output;
-    private BufferedWriter output;
+    private InputStream input;
+    private BufferedOutputStream output;
+    private WritableByteChannel outputChannel;
+    private final PacketDecoder decoder;
     private Thread receiveThread;
     private volatile boolean connected;
+    private boolean virtualThreads;
 
     public TcpClient() {
         this.connected = false;
+        this.decoder = new PacketDecoder(new PacketDecoder.Listener() {
+            @Override
+            public boolean isReceiving() {
+                return connected;
+            }
+
+            @Override
+            public void lineDecoded(String line) {
+                dispatcher.raiseEvent(EVENT_PACKET_RECEIVED, line);
+            }
+
+            @Override
+            public void frameDecoded(ByteBuffer frame) {
+                dispatcher.raiseEvent(EVENT_FRAME_RECEIVED, frame);
+            }
+        });
 
         dispatcher.registerEvent(EVENT_CONNECTED);
         dispatcher.registerEvent(EVENT_CONNECT_FAILED, String.class);
         dispatcher.registerEvent(EVENT_DISCONNECTED);
         dispatcher.registerEvent(EVENT_PACKET_RECEIVED, String.class);
         dispatcher.registerEvent(EVENT_SEND_FAILED, String.class);
+        dispatcher.registerEvent(EVENT_FRAME_RECEIVED, ByteBuffer.class);
+    }
+
+    /**
+     * Sets whether packets are received on a virtual thread instead of a platform thread, which
+     * makes many simultaneous connections cheaper. This takes effect on the next connect and falls
+     * back to a platform thread if virtual threads are not supported.
+     * @param value Whether to use a virtual thread
+     */
+    public void setVirtualThreads(boolean value) {
+        this.virtualThreads = value;
+    }
+
+    /**
+     * Switches to receiving binary frames instead of text packets, see TcpServer.Client. This must
+     * be called while handling the packet received event of the packet that negotiated the switch.
+     */
+    public void setBinaryFraming() {
+        decoder.setBinary();
+    }
+
+    public boolean isBinaryFraming() {
+        return decoder.isBinary();
     }
 
     public void connect(String host, int port, int timeout) {
@@ -39,10 +85,11 @@ public class TcpClient extends EventRaiser implements Runnable {
             address = new InetSocketAddress(host, port);
             socket = new Socket();
             socket.connect(address, timeout);
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            input = socket.getInputStream();
+            output = new BufferedOutputStream(socket.getOutputStream());
+            outputChannel = Channels.newChannel(output);
             connected = true;
-            receiveThread = new Thread(this, "TcpClient-receive");
+            receiveThread = VirtualThreads.newThread(this, "TcpClient-receive", virtualThreads);
 
             // Raise the connected event before starting to receive to ensure that the connected
             // event is handled before a packet received event might be raised.
@@ -67,6 +114,7 @@ public class TcpClient extends EventRaiser implements Runnable {
         } finally {
             input = null;
             output = null;
+            outputChannel = null;
             connected = false;
             dispatcher.raiseEvent(EVENT_DISCONNECTED);
             try {
@@ -80,10 +128,21 @@ public class TcpClient extends EventRaiser implements Runnable {
     }
 
     public void send(String packet) {
+        send(TcpServer.encode(packet));
+    }
+
+    /**
+     * Sends data as it is, such as a frame created by a FrameWriter.
+     * @param data The data to send
+     */
+    public synchronized void send(ByteBuffer data) {
+        ByteBuffer buffer = data.duplicate();
 
         try {
-            output.write(packet);
-            output.newLine(); // TODO: Is this needed?
+            while (buffer.hasRemaining()) {
+                outputChannel.write(buffer);
+            }
+
             output.flush();
         } catch (IOException e) {
             dispatcher.raiseEvent(EVENT_SEND_FAILED, e.getMessage());
@@ -99,16 +158,23 @@ public class TcpClient extends EventRaiser implements Runnable {
 
     @Override
     public void run() {
-        String buffer;
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        ByteBuffer readBuffer = ByteBuffer.wrap(buffer);
+        int read;
 
         while (connected) {
             try {
-                buffer = input.readLine();
+                read = input.read(buffer);
 
-                if (buffer == null) {
+                if (read == -1) {
                     disconnect();
                 } else {
-                    dispatcher.raiseEvent(EVENT_PACKET_RECEIVED, buffer);
+                    readBuffer.clear();
+                    readBuffer.limit(read);
+
+                    if (!decoder.decode(readBuffer)) {
+                        disconnect();
+                    }
                 }
             } catch (IOException e) {
                 disconnect();
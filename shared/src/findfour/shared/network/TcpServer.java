@@ -1,16 +1,22 @@
 package findfour.shared.network;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import findfour.shared.ArgumentOutOfRangeException;
 import findfour.shared.events.EventHandler;
 import findfour.shared.events.EventRaiser;
 
@@ -22,6 +28,17 @@ public class TcpServer extends EventRaiser implements Runnable {
     public static final int EVENT_CLIENT_DISCONNECTED = 4;
     public static final int EVENT_PACKET_RECEIVED = 5;
     public static final int EVENT_SEND_FAILED = 6;
+    public static final int EVENT_FRAME_RECEIVED = 7;
+    /**
+     * The number of threads that handle the clients in the Selector I/O mode.
+     */
+    private static final int SELECTOR_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    /**
+     * The default maximum number of packets that can be queued for a client.
+     */
+    public static final int DEFAULT_SEND_QUEUE_LIMIT = 1024;
 
     // TODO: Do we need to maintain a list of connected clients?
     // It can be used to broadcast a message to all clients, but will we use that directly through
@@ -31,12 +48,25 @@ public class TcpServer extends EventRaiser implements Runnable {
     private final List<Client> connectedClients;
     private final Object syncRoot;
     private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
+    private SelectorLoop[] selectorLoops;
+    private int nextSelectorLoop;
+    private IoMode ioMode;
+    // Whether the server was started in the Virtual I/O mode.
+    private boolean virtualThreads;
+    // The threads that write the queued packets of clients in the Blocking and Virtual I/O modes.
+    private ExecutorService sendExecutor;
+    private volatile int sendQueueLimit;
+    private volatile OverflowPolicy overflowPolicy;
     private Thread listenThread;
     private volatile boolean keepListening;
 
     public TcpServer() {
         this.syncRoot = new Object();
         this.connectedClients = new LinkedList<Client>();
+        this.ioMode = IoMode.Blocking;
+        this.sendQueueLimit = DEFAULT_SEND_QUEUE_LIMIT;
+        this.overflowPolicy = OverflowPolicy.Disconnect;
 
         dispatcher.registerEvent(EVENT_STARTED, int.class);
         dispatcher.registerEvent(EVENT_START_FAILED, int.class, String.class);
@@ -45,12 +75,70 @@ public class TcpServer extends EventRaiser implements Runnable {
         dispatcher.registerEvent(EVENT_CLIENT_DISCONNECTED, Client.class);
         dispatcher.registerEvent(EVENT_PACKET_RECEIVED, Client.class, String.class);
         dispatcher.registerEvent(EVENT_SEND_FAILED, Client.class, String.class);
+        dispatcher.registerEvent(EVENT_FRAME_RECEIVED, Client.class, ByteBuffer.class);
+    }
+
+    /**
+     * Sets the way in which the connections of clients are handled. The mode takes effect the next
+     * time the server is started.
+     * @param mode The I/O mode
+     */
+    public void setIoMode(IoMode mode) {
+        this.ioMode = mode;
+    }
+
+    /*@ pure */
+    public IoMode getIoMode() {
+        return ioMode;
+    }
+
+    /**
+     * Sets the maximum number of packets that can be queued for a client, which applies to clients
+     * that connect after this call.
+     * @param limit The maximum number of packets, which must be positive
+     */
+    //@ requires limit > 0;
+    public void setSendQueueLimit(int limit) {
+        if (limit <= 0) {
+            throw new ArgumentOutOfRangeException("limit", 1, Integer.MAX_VALUE);
+        }
+
+        this.sendQueueLimit = limit;
+    }
+
+    /*@ pure */
+    public int getSendQueueLimit() {
+        return sendQueueLimit;
+    }
+
+    /**
+     * Sets what happens when a packet is sent to a client whose send queue is full, which applies
+     * to clients that connect after this call.
+     * @param policy The overflow policy
+     */
+    //@ requires policy != null;
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+    }
+
+    /*@ pure */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
     }
 
     public void start(int port) {
         try {
-            serverSocket = new ServerSocket(port);
-            listenThread = new Thread(this, "TcpServer-listen");
+            serverChannel = null;
+            virtualThreads = ioMode == IoMode.Virtual;
+
+            if (ioMode == IoMode.Selector) {
+                openSelectorServer(port);
+            } else {
+                serverSocket = new ServerSocket(port);
+                sendExecutor = createSendExecutor();
+            }
+
+            listenThread = VirtualThreads.newThread(this, "TcpServer-listen", virtualThreads);
             keepListening = true;
 
             // Raise the started event before starting to listen to ensure that the started event
@@ -59,6 +147,7 @@ public class TcpServer extends EventRaiser implements Runnable {
 
             listenThread.start();
         } catch (IOException e) {
+            closeSelectorServer();
             dispatcher.raiseEvent(EVENT_START_FAILED, port, e.getMessage());
         }
     }
@@ -71,6 +160,19 @@ public class TcpServer extends EventRaiser implements Runnable {
 
         keepListening = false;
 
+        // Close the server socket first, so no clients are accepted while the selector loops and
+        // send threads are torn down.
+        boolean closed = false;
+
+        try {
+            serverSocket.close();
+            closed = true;
+        } catch (IOException e) {
+            // TODO: Log?
+            // Useless statement for now to prevent a Checkstyle warning.
+            e.hashCode();
+        }
+
         /* 
          * Disconnect all clients when the server stops. Calling disconnect will raise the
          * EVENT_CLIENT_DISCONNECTED, in which the handler will try to obtain a lock to syncRoot
@@ -86,14 +188,15 @@ public class TcpServer extends EventRaiser implements Runnable {
             }
         }
 
-        try {
-            serverSocket.close();
+        stopSelectorLoops();
+
+        if (sendExecutor != null) {
+            sendExecutor.shutdown();
+            sendExecutor = null;
+        }
 
+        if (closed) {
             dispatcher.raiseEvent(EVENT_STOPPED);
-        } catch (IOException e) {
-            // TODO: Log?
-            // Useless statement for now to prevent a Checkstyle warning.
-            e.hashCode();
         }
     }
 
@@ -102,36 +205,169 @@ public class TcpServer extends EventRaiser implements Runnable {
         return keepListening;
     }
 
+    /**
+     * Encodes a packet for sending, which is needed to send the same packet to many clients
+     * without encoding it for every one of them.
+     * @param packet The packet to encode, without line terminator
+     * @return A read-only buffer with the encoded packet, including the line terminator
+     */
+    //@ requires packet != null;
+    public static ByteBuffer encode(String packet) {
+        return ByteBuffer.wrap((packet + LINE_SEPARATOR).getBytes(CHARSET)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Sends the same encoded packet to a number of clients. The buffer is shared by the clients
+     * instead of copied for each of them, and is not modified.
+     * @param packet The packet, as returned by encode
+     * @param clients The clients to send the packet to
+     */
+    //@ requires packet != null && clients != null;
+    public void broadcast(ByteBuffer packet, Iterable<? extends Client> clients) {
+        for (Client client : clients) {
+            client.send(packet);
+        }
+    }
+
     @Override
     public void run() {
         while (keepListening) {
             try {
-                Socket clientSocket = serverSocket.accept();
-
-                try {
-                    Client client = new Client(clientSocket);
-                    registerClient(client);
-                } catch (IOException e) {
-                    // Client socket accepted correctly, but then failed to open input/output
-                    // streams. Drop the client.
-                    clientSocket.close();
+                // The I/O mode may have been changed since the server started, check which kind of
+                // socket was opened instead.
+                if (serverChannel != null) {
+                    acceptChannel();
+                } else {
+                    acceptSocket();
                 }
-
             } catch (IOException e) {
                 stop();
             }
         }
     }
 
+    private void acceptSocket() throws IOException {
+        Socket clientSocket = serverSocket.accept();
+        ExecutorService executor;
+
+        // A client accepted right before the server stopped is dropped, its send threads are gone.
+        synchronized (this) {
+            if (!keepListening) {
+                clientSocket.close();
+                return;
+            }
+
+            executor = sendExecutor;
+        }
+
+        try {
+            registerClient(new StreamClient(clientSocket, virtualThreads, executor,
+                    sendQueueLimit, overflowPolicy));
+        } catch (IOException e) {
+            // Client socket accepted correctly, but then failed to open input/output
+            // streams. Drop the client.
+            clientSocket.close();
+        }
+    }
+
+    private void acceptChannel() throws IOException {
+        SocketChannel clientChannel = serverChannel.accept();
+        SelectorLoop loop;
+
+        // A client accepted right before the server stopped is dropped, its selector loops are
+        // gone.
+        synchronized (this) {
+            if (!keepListening) {
+                clientChannel.close();
+                return;
+            }
+
+            // Spread the clients evenly over the selector loops.
+            loop = selectorLoops[nextSelectorLoop];
+            nextSelectorLoop = (nextSelectorLoop + 1) % selectorLoops.length;
+        }
+
+        try {
+            registerClient(new ChannelClient(clientChannel, loop, sendQueueLimit, overflowPolicy));
+        } catch (IOException e) {
+            // The channel could not be made non-blocking. Drop the client.
+            clientChannel.close();
+        }
+    }
+
     private void registerClient(Client client) {
         client.registerEventHandlers(this);
-        client.startReceiving();
 
         synchronized (syncRoot) {
             connectedClients.add(client);
         }
 
+        // Raise the connected event before starting to receive to ensure that the connected event
+        // is handled before a packet received event might be raised.
         dispatcher.raiseEvent(EVENT_CLIENT_CONNECTED, client, client.getHostAddress());
+
+        client.startReceiving();
+    }
+
+    private void openSelectorServer(int port) throws IOException {
+        // The channel stays in blocking mode, the listen thread only accepts clients and hands
+        // them over to the selector loops.
+        serverChannel = ServerSocketChannel.open();
+        serverSocket = serverChannel.socket();
+        serverSocket.bind(new InetSocketAddress(port));
+        selectorLoops = new SelectorLoop[SELECTOR_THREADS];
+
+        for (int i = 0; i < selectorLoops.length; i++) {
+            selectorLoops[i] = new SelectorLoop(String.format("TcpServer-selector%d", i));
+            selectorLoops[i].start();
+        }
+    }
+
+    private void stopSelectorLoops() {
+        if (selectorLoops == null) {
+            return;
+        }
+
+        for (SelectorLoop loop : selectorLoops) {
+            if (loop != null) {
+                loop.stop();
+            }
+        }
+
+        selectorLoops = null;
+    }
+
+    private ExecutorService createSendExecutor() {
+        // Threads are only created while packets are being written and end when idle, so a
+        // client that blocks while writing does not delay the writes to other clients.
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                String name = String.format("TcpServer-send%d", count++);
+                Thread thread = VirtualThreads.newThread(runnable, name, virtualThreads);
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    private void closeSelectorServer() {
+        stopSelectorLoops();
+
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                // The server failed to start anyway, there is nothing more to clean up.
+                e.getMessage();
+            }
+
+            serverChannel = null;
+        }
     }
 
     // --- Client event handlers ---
@@ -154,85 +390,191 @@ public class TcpServer extends EventRaiser implements Runnable {
         dispatcher.raiseEvent(EVENT_SEND_FAILED, client, reason);
     }
 
-    public class Client extends EventRaiser implements Runnable {
+    @EventHandler(eventId = Client.EVENT_FRAME_RECEIVED)
+    private void clientFrameReceived(Client client, ByteBuffer frame) {
+        dispatcher.raiseEvent(EVENT_FRAME_RECEIVED, client, frame);
+    }
+
+    /**
+     * Represents the connection of a single client. The way data is received and sent depends on
+     * the I/O mode of the server, but the events are always the same.
+     * <p>
+     * A client sends text packets until it switches to binary frames, after which the frame
+     * received event is raised instead of the packet received event. The buffer that is passed
+     * with that event holds the payload of the frame and is only valid during the event.
+     */
+    public abstract static class Client extends EventRaiser {
         public static final int EVENT_DISCONNECTED = 0;
         public static final int EVENT_PACKET_RECEIVED = 1;
         public static final int EVENT_SEND_FAILED = 2;
+        public static final int EVENT_FRAME_RECEIVED = 3;
+
+        private final SocketAddress remoteAddress;
+        private final AtomicBoolean connected;
+        private final int sendQueueLimit;
+        private final OverflowPolicy overflowPolicy;
+        private final PacketDecoder decoder;
+        private volatile Object attachment;
+
+        protected Client(SocketAddress argRemoteAddress, int argSendQueueLimit,
+                OverflowPolicy argOverflowPolicy) {
+            this.remoteAddress = argRemoteAddress;
+            this.connected = new AtomicBoolean(true);
+            this.sendQueueLimit = argSendQueueLimit;
+            this.overflowPolicy = argOverflowPolicy;
+            this.decoder = new PacketDecoder(new PacketDecoder.Listener() {
+                @Override
+                public boolean isReceiving() {
+                    return isConnected();
+                }
 
-        private final Socket socket;
-        private final BufferedReader input;
-        private final BufferedWriter output;
-        private volatile boolean connected;
+                @Override
+                public void lineDecoded(String line) {
+                    dispatcher.raiseEvent(EVENT_PACKET_RECEIVED, Client.this, line);
+                }
 
-        public Client(Socket argSocket) throws IOException {
-            this.socket = argSocket;
-            this.input = new BufferedReader(new InputStreamReader(argSocket.getInputStream()));
-            this.output = new BufferedWriter(new OutputStreamWriter(argSocket.getOutputStream()));
-            this.connected = true;
+                @Override
+                public void frameDecoded(ByteBuffer frame) {
+                    dispatcher.raiseEvent(EVENT_FRAME_RECEIVED, Client.this, frame);
+                }
+            });
 
             dispatcher.registerEvent(EVENT_DISCONNECTED, Client.class);
             dispatcher.registerEvent(EVENT_PACKET_RECEIVED, Client.class, String.class);
             dispatcher.registerEvent(EVENT_SEND_FAILED, Client.class, String.class);
+            dispatcher.registerEvent(EVENT_FRAME_RECEIVED, Client.class, ByteBuffer.class);
         }
 
-        public void startReceiving() {
-            new Thread(this, String.format("TcpServer-client%d-receive", this.hashCode())).start();
+        /**
+         * Starts receiving packets from the client.
+         */
+        public abstract void startReceiving();
+
+        /**
+         * Queues a packet to be sent to the client, which may be called from any thread. The
+         * packet is written by another thread, so this never blocks on a slow client. If the
+         * send queue of the client is full, the overflow policy of the server applies.
+         * @param packet The packet to send, without line terminator
+         */
+        public void send(String packet) {
+            send(encode(packet));
         }
 
-        public String getHostAddress() {
-            InetSocketAddress address = (InetSocketAddress) socket.getRemoteSocketAddress();
+        /**
+         * Queues an encoded packet to be sent to the client, like send(String). The buffer may be
+         * shared with other clients, it is not modified.
+         * @param packet The packet, as returned by encode
+         */
+        public abstract void send(ByteBuffer packet);
 
-            return address.getHostString();
+        /**
+         * Switches to receiving binary frames instead of text packets. This must be called while
+         * handling the packet received event of the packet that negotiated the switch, the data
+         * following that packet is received as frames.
+         */
+        public void setBinaryFraming() {
+            decoder.setBinary();
         }
 
-        public void send(String packet) {
-            try {
-                output.write(packet);
-                output.newLine();
-                output.flush();
-            } catch (IOException e) {
-                dispatcher.raiseEvent(EVENT_SEND_FAILED, this, e.getMessage());
+        /*@ pure */
+        public boolean isBinaryFraming() {
+            return decoder.isBinary();
+        }
 
-                // Drop the connection if data cannot be send for whatever reason.
-                disconnect();
-            }
+        /**
+         * Attaches an object to the client, like the object that represents the client in the
+         * application, so it can be found from the client in the events without a lookup.
+         * @param argAttachment The object to attach, or null to remove the attachment
+         */
+        public void setAttachment(Object argAttachment) {
+            attachment = argAttachment;
         }
 
-        @Override
-        public void run() {
-            String buffer;
+        /**
+         * Returns the object that is attached to the client.
+         * @param type The type of the attachment
+         * @return The attachment, or null if nothing is attached
+         * @throws ClassCastException If the attachment is not of the type
+         */
+        //@ requires type != null;
+        /*@ pure */
+        public <T> T getAttachment(Class<T> type) {
+            return type.cast(attachment);
+        }
 
-            while (connected) {
-                try {
-                    buffer = input.readLine();
+        public String getHostAddress() {
+            InetSocketAddress address = (InetSocketAddress) remoteAddress;
 
-                    if (buffer == null) {
-                        disconnect();
-                    } else {
-                        dispatcher.raiseEvent(EVENT_PACKET_RECEIVED, this, buffer);
-                    }
-                } catch (IOException e) {
-                    disconnect();
-                }
-            }
+            return address.getHostString();
+        }
+
+        /*@ pure */
+        public boolean isConnected() {
+            return connected.get();
         }
 
         public void disconnect() {
-            if (!connected) {
+            // Only the first call disconnects, even if multiple threads disconnect at once.
+            if (!connected.compareAndSet(true, false)) {
                 return;
             }
 
             try {
-                socket.close();
+                close();
             } catch (IOException e) {
                 // There is no sensible thing to do when the socket, for whatever reason, fails to
                 // close. Do something (even though it's useless) to prevent a Checkstyle warning.
                 e.getMessage();
             } finally {
-                connected = false;
-
                 dispatcher.raiseEvent(EVENT_DISCONNECTED, this);
             }
         }
+
+        /**
+         * Closes the connection to the client.
+         * @throws IOException If the connection fails to close
+         */
+        protected abstract void close() throws IOException;
+
+        /**
+         * Decodes received data, raising an event for every complete packet or frame.
+         * @param input The received data, which is consumed
+         * @return False if the data is invalid and the client has to be disconnected
+         */
+        protected boolean decode(ByteBuffer input) {
+            return decoder.decode(input);
+        }
+
+        /**
+         * Returns the maximum number of packets that can be queued for this client.
+         */
+        /*@ pure */
+        protected int getSendQueueLimit() {
+            return sendQueueLimit;
+        }
+
+        /**
+         * Applies the overflow policy after a packet could not be queued because the send queue
+         * is full.
+         */
+        protected void sendQueueOverflowed() {
+            if (overflowPolicy == OverflowPolicy.Disconnect) {
+                sendFailed("Send queue is full");
+            } else if (isConnected()) {
+                dispatcher.raiseEvent(EVENT_SEND_FAILED, this,
+                        "Send queue is full, dropped packet");
+            }
+        }
+
+        protected void sendFailed(String reason) {
+            // Sending to a client that already disconnected fails as well, which is not worth
+            // reporting.
+            if (isConnected()) {
+                dispatcher.raiseEvent(EVENT_SEND_FAILED, this, reason);
+            }
+
+            // Drop the connection if data cannot be send for whatever reason.
+            disconnect();
+        }
     }
 }
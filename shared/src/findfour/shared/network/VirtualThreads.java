@@ -0,0 +1,72 @@
+package findfour.shared.network;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates virtual threads on Java versions that support them (21 and later), while the code base
+ * itself can still be compiled for and run on older versions. The virtual thread API is accessed
+ * through reflection, and platform threads are created instead if it is not available.
+ * @author ciske
+ *
+ */
+public final class VirtualThreads {
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final Method NAME = findMethod(findClass("java.lang.Thread$Builder"), "name",
+            String.class);
+    private static final Method UNSTARTED = findMethod(findClass("java.lang.Thread$Builder"),
+            "unstarted", Runnable.class);
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns whether the running Java version supports virtual threads.
+     */
+    /*@ pure */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && NAME != null && UNSTARTED != null;
+    }
+
+    /**
+     * Creates a new thread which is not started yet.
+     * @param task The task the thread runs
+     * @param name The name of the thread
+     * @param virtual Whether to create a virtual thread, which is ignored if virtual threads are
+     * not supported
+     */
+    //@ requires task != null && name != null;
+    public static Thread newThread(Runnable task, String name, boolean virtual) {
+        if (virtual && isSupported()) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+
+                return (Thread) UNSTARTED.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                // Can't happen as the methods are public, fall back to a platform thread.
+                e.getMessage();
+            }
+        }
+
+        return new Thread(task, name);
+    }
+
+    private static Class<?> findClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name, Class<?>... argTypes) {
+        if (type == null) {
+            return null;
+        }
+
+        try {
+            return type.getMethod(name, argTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
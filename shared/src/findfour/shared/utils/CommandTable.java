@@ -0,0 +1,129 @@
+package findfour.shared.utils;
+
+import findfour.shared.ArgumentException;
+import findfour.shared.ArgumentOutOfRangeException;
+
+/**
+ * Maps the commands of a protocol to ids, so the handler of a packet can be picked with a switch
+ * on the id. Looking up the command of a tokenized packet takes a hash and usually a single
+ * comparison, regardless of the number of commands, and does not allocate any memory.
+ * <p>
+ * Commands can be registered at any time, for example when the extensions a client supports are
+ * known. Registering is not thread safe, looking up is as long as no commands are registered at
+ * the same time.
+ * @author ciske
+ *
+ */
+public final class CommandTable {
+    /**
+     * The id which is returned for commands that are not registered.
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Open addressing with linear probing, the capacity is a power of two and is kept at least
+    // twice the number of commands so probe sequences stay short.
+    private String[] commands;
+    private int[] ids;
+    private int count;
+
+    public CommandTable() {
+        this.commands = new String[INITIAL_CAPACITY];
+        this.ids = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Registers a command.
+     * @param command The command
+     * @param id The id to return for the command, which must not be negative
+     */
+    //@ requires command != null;
+    //@ requires id >= 0;
+    //@ ensures lookup(command) == id;
+    public void register(String command, int id) {
+        if (id < 0) {
+            throw new ArgumentOutOfRangeException("id", 0, Integer.MAX_VALUE);
+        }
+
+        if ((count + 1) * 2 > commands.length) {
+            grow();
+        }
+
+        int slot = findSlot(command, command.hashCode());
+
+        if (commands[slot] != null) {
+            throw new ArgumentException("command", "Command '%s' is already registered", command);
+        }
+
+        commands[slot] = command;
+        ids[slot] = id;
+        count++;
+    }
+
+    /**
+     * Returns the id of the command of a tokenized packet, or UNKNOWN if it is not registered.
+     * @param tokenizer The tokenizer which holds the packet
+     */
+    //@ requires tokenizer != null;
+    /*@ pure */
+    public int lookup(Tokenizer tokenizer) {
+        int mask = commands.length - 1;
+
+        for (int i = tokenizer.getCommandHash() & mask; commands[i] != null; i = (i + 1) & mask) {
+            if (tokenizer.isCommand(commands[i])) {
+                return ids[i];
+            }
+        }
+
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the id of a command, or UNKNOWN if it is not registered.
+     * @param command The command
+     */
+    //@ requires command != null;
+    /*@ pure */
+    public int lookup(String command) {
+        int slot = findSlot(command, command.hashCode());
+
+        return commands[slot] == null ? UNKNOWN : ids[slot];
+    }
+
+    /*@ pure */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the slot which holds the command, or the empty slot where it would be added.
+     */
+    private int findSlot(String command, int hash) {
+        int mask = commands.length - 1;
+        int i = hash & mask;
+
+        while (commands[i] != null && !commands[i].equals(command)) {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+
+    private void grow() {
+        String[] oldCommands = commands;
+        int[] oldIds = ids;
+
+        commands = new String[oldCommands.length * 2];
+        ids = new int[oldCommands.length * 2];
+
+        for (int i = 0; i < oldCommands.length; i++) {
+            if (oldCommands[i] != null) {
+                int slot = findSlot(oldCommands[i], oldCommands[i].hashCode());
+
+                commands[slot] = oldCommands[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+}
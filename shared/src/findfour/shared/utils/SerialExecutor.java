@@ -0,0 +1,103 @@
+package findfour.shared.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import findfour.shared.ArgumentNullException;
+
+/**
+ * Runs tasks one at a time in the order they are submitted, on the threads of another executor.
+ * Many serial executors can share a small pool of threads: an executor only occupies a thread of
+ * the pool while it has tasks, and then runs at most a batch of tasks before giving the thread to
+ * other executors.
+ * <p>
+ * The tasks of a serial executor never run at the same time, and each task sees the changes made
+ * by the tasks before it, so state that is only used by the tasks needs no locking. Tasks can be
+ * submitted from any thread, including from the tasks themselves.
+ * @author ciske
+ *
+ */
+public final class SerialExecutor implements Executor {
+    /**
+     * The maximum number of tasks that are run before the thread is given to other executors.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks;
+    // Whether the executor occupies a thread of the pool, or is about to.
+    private final AtomicBoolean scheduled;
+    private final Runnable runner;
+
+    /**
+     * Creates a new serial executor.
+     * @param argExecutor The executor that runs the tasks
+     */
+    //@ requires argExecutor != null;
+    public SerialExecutor(Executor argExecutor) {
+        if (argExecutor == null) {
+            throw new ArgumentNullException("argExecutor");
+        }
+
+        this.executor = argExecutor;
+        this.tasks = new ConcurrentLinkedQueue<Runnable>();
+        this.scheduled = new AtomicBoolean(false);
+        this.runner = new Runnable() {
+            @Override
+            public void run() {
+                runBatch();
+            }
+        };
+    }
+
+    /**
+     * Submits a task, which runs after all tasks that were submitted before it.
+     * @param task The task
+     */
+    //@ requires task != null;
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new ArgumentNullException("task");
+        }
+
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(runner);
+        }
+    }
+
+    private void runBatch() {
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = tasks.poll();
+
+                if (task == null) {
+                    break;
+                }
+
+                // A task that fails must not prevent the tasks after it from running.
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Thread thread = Thread.currentThread();
+
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+
+            // Tasks that were submitted while the flag was still set have to be run as well.
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package findfour.shared.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import findfour.shared.ArgumentNullException;
+import findfour.shared.ArgumentOutOfRangeException;
+
+/**
+ * Runs tasks after a delay, for large numbers of timeouts that are mostly cancelled or
+ * rescheduled before they expire. The timeouts are hashed by the tick at which they expire into
+ * a fixed number of buckets, which the wheel visits one per tick. Scheduling and cancelling a
+ * timeout take constant time, and a tick only visits the timeouts of a single bucket, regardless
+ * of the total number of timeouts.
+ * <p>
+ * Timeouts expire at the first tick at or after their delay, so the tick duration is the
+ * precision of the wheel. A delay longer than a full rotation of the wheel is counted down in
+ * rounds. The wheel can be ticked by its own thread or by calling tick, and can be used from
+ * any thread.
+ * @author ciske
+ *
+ */
+public final class TimerWheel {
+    private final long tickDuration;
+    // The first timeout of every bucket, the timeouts of a bucket form a doubly linked list. The
+    // number of buckets is a power of two, so the bucket of a tick is found with a mask.
+    private final Timeout[] buckets;
+    private final int mask;
+    private long currentTick;
+    private int count;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * Creates a new timer wheel.
+     * @param argTickDuration The duration of a tick in milliseconds, which must be positive
+     * @param wheelSize The number of buckets, which is rounded up to a power of two
+     */
+    //@ requires argTickDuration > 0;
+    //@ requires wheelSize > 0 && wheelSize <= 1 << 30;
+    public TimerWheel(long argTickDuration, int wheelSize) {
+        if (argTickDuration <= 0) {
+            throw new ArgumentOutOfRangeException("argTickDuration", 1, Long.MAX_VALUE);
+        }
+
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new ArgumentOutOfRangeException("wheelSize", 1, (1 << 30) + 1);
+        }
+
+        int size = Integer.highestOneBit(wheelSize);
+
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.tickDuration = argTickDuration;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules a task to run once the delay expired. The task runs on the thread that ticks the
+     * wheel, so it should not block.
+     * @param task The task to run
+     * @param delay The delay in milliseconds, a delay shorter than a tick runs at the next tick
+     * @return The timeout, which can be used to cancel the task
+     */
+    //@ requires task != null;
+    //@ ensures getCount() == \old(getCount()) + 1;
+    public synchronized Timeout schedule(Runnable task, long delay) {
+        if (task == null) {
+            throw new ArgumentNullException("task");
+        }
+
+        long ticks = Math.max(1, (delay + tickDuration - 1) / tickDuration);
+        Timeout timeout = new Timeout(this, task);
+
+        timeout.bucket = (int) ((currentTick + ticks) & mask);
+        timeout.remainingRounds = (ticks - 1) / buckets.length;
+        link(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * Advances the wheel by a tick and runs the tasks of the timeouts that expired. This is done
+     * every tick duration by the thread of the wheel once it is started.
+     */
+    public void tick() {
+        List<Timeout> expired = null;
+
+        synchronized (this) {
+            currentTick++;
+
+            Timeout timeout = buckets[(int) (currentTick & mask)];
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                } else {
+                    unlink(timeout);
+                    timeout.expired = true;
+
+                    if (expired == null) {
+                        expired = new ArrayList<Timeout>();
+                    }
+
+                    expired.add(timeout);
+                }
+
+                timeout = next;
+            }
+        }
+
+        if (expired == null) {
+            return;
+        }
+
+        // The tasks run outside of the lock, so they can schedule new timeouts. A task that fails
+        // must not prevent the other tasks from running.
+        for (Timeout timeout : expired) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    /**
+     * Starts a thread which ticks the wheel every tick duration.
+     * @param threadName The name of the thread
+     */
+    //@ requires threadName != null;
+    public synchronized void start(final String threadName) {
+        if (ticker != null) {
+            return;
+        }
+
+        ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+        ticker.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the thread that ticks the wheel and cancels all timeouts.
+     */
+    //@ ensures getCount() == 0;
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdown();
+            ticker = null;
+        }
+
+        for (int i = 0; i < buckets.length; i++) {
+            while (buckets[i] != null) {
+                unlink(buckets[i]);
+            }
+        }
+    }
+
+    /*@ pure */
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * Returns the number of timeouts that are scheduled.
+     */
+    /*@ pure */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    private void link(Timeout timeout) {
+        Timeout head = buckets[timeout.bucket];
+
+        timeout.next = head;
+
+        if (head != null) {
+            head.previous = timeout;
+        }
+
+        buckets[timeout.bucket] = timeout;
+        timeout.linked = true;
+        count++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.linked = false;
+        count--;
+    }
+
+    /**
+     * A task that is scheduled on a timer wheel.
+     */
+    public static final class Timeout {
+        private final TimerWheel wheel;
+        private final Runnable task;
+        // The fields below are guarded by the wheel.
+        private Timeout previous;
+        private Timeout next;
+        private int bucket;
+        private long remainingRounds;
+        private boolean linked;
+        private boolean expired;
+
+        private Timeout(TimerWheel argWheel, Runnable argTask) {
+            this.wheel = argWheel;
+            this.task = argTask;
+        }
+
+        /**
+         * Cancels the timeout, so its task does not run.
+         * @return False if the timeout already expired or was cancelled
+         */
+        public boolean cancel() {
+            synchronized (wheel) {
+                if (!linked) {
+                    return false;
+                }
+
+                wheel.unlink(this);
+
+                return true;
+            }
+        }
+
+        /**
+         * Returns whether the timeout expired, in which case its task ran or is running.
+         */
+        /*@ pure */
+        public boolean isExpired() {
+            synchronized (wheel) {
+                return expired;
+            }
+        }
+    }
+}
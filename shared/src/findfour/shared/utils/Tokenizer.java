@@ -0,0 +1,366 @@
+package findfour.shared.utils;
+
+import findfour.shared.ArgumentException;
+import findfour.shared.ArgumentOutOfRangeException;
+
+/**
+ * Splits packets into a command and arguments without copying them. Instead of substrings, the
+ * tokenizer stores the offsets of every token within the packet, and the tokens are compared and
+ * parsed in place. An instance is meant to be reused for every packet of a connection, after the
+ * first few packets tokenizing does not allocate any memory.
+ * <p>
+ * The command is everything before the first delimiter, the arguments are separated by single
+ * delimiters. The arguments are the same as those of StringUtils.extractArgs: two delimiters in a
+ * row give an empty argument and a delimiter at the end of the packet does not. When quotes are
+ * allowed, delimiters between quotes do not separate arguments and quotes are never part of an
+ * argument, wherever they are in it. An unterminated quote lasts until the end of the packet, and
+ * a last argument which is empty without its quotes is left out.
+ * <p>
+ * The characters of an argument that contains quotes are copied without the quotes into a buffer
+ * of the tokenizer, which is reused as well. Other arguments are not copied.
+ * <p>
+ * An instance is not thread safe.
+ * @author ciske
+ *
+ */
+public final class Tokenizer {
+    private static final char QUOTE = '\"';
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int RADIX = 10;
+    private static final int HASH_MULTIPLIER = 31;
+    // Every decimal number with at most this many digits fits in an int.
+    private static final int MAX_INT_DIGITS = 9;
+
+    private final char delimiter;
+    private final boolean allowQuotes;
+    private CharSequence packet;
+    private int commandEnd;
+    private int commandHash;
+    private int[] argStarts;
+    private int[] argEnds;
+    // Whether the offsets of an argument are in the quoted buffer instead of the packet.
+    private boolean[] argQuoted;
+    private int argCount;
+    private char[] quotedChars;
+    private int quotedLength;
+
+    /**
+     * Creates a new tokenizer.
+     * @param argDelimiter The character which separates the tokens
+     * @param argAllowQuotes Whether arguments can be quoted to contain the delimiter
+     */
+    public Tokenizer(char argDelimiter, boolean argAllowQuotes) {
+        this.delimiter = argDelimiter;
+        this.allowQuotes = argAllowQuotes;
+        this.packet = "";
+        this.argStarts = new int[INITIAL_CAPACITY];
+        this.argEnds = new int[INITIAL_CAPACITY];
+        this.argQuoted = new boolean[INITIAL_CAPACITY];
+        this.quotedChars = new char[0];
+    }
+
+    /**
+     * Splits a packet into tokens, replacing the tokens of the previous packet.
+     * @param argPacket The packet
+     */
+    //@ requires argPacket != null;
+    public void tokenize(CharSequence argPacket) {
+        int length = argPacket.length();
+
+        packet = argPacket;
+        argCount = 0;
+        quotedLength = 0;
+        commandEnd = indexOfCommandEnd();
+
+        if (commandEnd == length) {
+            return;
+        }
+
+        int start = commandEnd + 1;
+        boolean insideQuotes = false;
+        boolean hasQuotes = false;
+
+        for (int i = start; i < length; i++) {
+            char c = argPacket.charAt(i);
+
+            if (c == QUOTE && allowQuotes) {
+                insideQuotes = !insideQuotes;
+                hasQuotes = true;
+            } else if (c == delimiter && !insideQuotes) {
+                addArg(start, i, hasQuotes);
+                start = i + 1;
+                hasQuotes = false;
+            }
+        }
+
+        if (start < length) {
+            addArg(start, length, hasQuotes);
+
+            // Like StringUtils.extractArgs, a last argument of only quotes is left out.
+            if (getArgLength(argCount - 1) == 0) {
+                argCount--;
+            }
+        }
+    }
+
+    /**
+     * Returns the packet that was tokenized last.
+     */
+    /*@ pure */
+    public CharSequence getPacket() {
+        return packet;
+    }
+
+    /**
+     * Returns whether the command of the packet equals the given command.
+     * @param command The command to compare with
+     */
+    /*@ pure */
+    //@ requires command != null;
+    public boolean isCommand(String command) {
+        return regionEquals(0, commandEnd, command);
+    }
+
+    /**
+     * Returns the hash code of the command, which equals getCommand().hashCode() but is computed
+     * without creating the string.
+     */
+    /*@ pure */
+    public int getCommandHash() {
+        return commandHash;
+    }
+
+    /**
+     * Returns the command of the packet as a string, which has to allocate a new string.
+     */
+    /*@ pure */
+    public String getCommand() {
+        return packet.subSequence(0, commandEnd).toString();
+    }
+
+    /**
+     * Returns whether the packet contains a delimiter after the command, even if no arguments
+     * follow it.
+     */
+    /*@ pure */
+    public boolean hasArgs() {
+        return commandEnd < packet.length();
+    }
+
+    /**
+     * Returns the offset in the packet of the first character after the command and its
+     * delimiter, which is where the arguments start.
+     */
+    //@ requires hasArgs();
+    /*@ pure */
+    public int getArgsOffset() {
+        return commandEnd + 1;
+    }
+
+    /*@ pure */
+    public int getArgCount() {
+        return argCount;
+    }
+
+    /**
+     * Returns the length of an argument.
+     * @param index The index of the argument
+     */
+    //@ requires index >= 0 && index < getArgCount();
+    /*@ pure */
+    public int getArgLength(int index) {
+        checkIndex(index);
+
+        return argEnds[index] - argStarts[index];
+    }
+
+    /**
+     * Returns a character of an argument.
+     * @param index The index of the argument
+     * @param offset The offset of the character within the argument
+     */
+    //@ requires index >= 0 && index < getArgCount();
+    //@ requires offset >= 0 && offset < getArgLength(index);
+    /*@ pure */
+    public char getArgChar(int index, int offset) {
+        if (offset < 0 || offset >= getArgLength(index)) {
+            throw new ArgumentOutOfRangeException("offset", 0, getArgLength(index));
+        }
+
+        return charAt(index, argStarts[index] + offset);
+    }
+
+    /**
+     * Returns whether an argument equals the given value.
+     * @param index The index of the argument
+     * @param value The value to compare with
+     */
+    //@ requires index >= 0 && index < getArgCount();
+    //@ requires value != null;
+    /*@ pure */
+    public boolean argEquals(int index, String value) {
+        checkIndex(index);
+
+        if (!argQuoted[index]) {
+            return regionEquals(argStarts[index], argEnds[index], value);
+        }
+
+        if (getArgLength(index) != value.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            if (quotedChars[argStarts[index] + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns an argument as a string, which has to allocate a new string. Use this only for
+     * arguments that have to be kept, such as names.
+     * @param index The index of the argument
+     */
+    //@ requires index >= 0 && index < getArgCount();
+    /*@ pure */
+    public String getArg(int index) {
+        checkIndex(index);
+
+        if (argQuoted[index]) {
+            return new String(quotedChars, argStarts[index], getArgLength(index));
+        }
+
+        return packet.subSequence(argStarts[index], argEnds[index]).toString();
+    }
+
+    /**
+     * Returns whether an argument is a non-negative decimal number which fits in an int.
+     * @param index The index of the argument
+     */
+    //@ requires index >= 0 && index < getArgCount();
+    /*@ pure */
+    public boolean isArgInt(int index) {
+        int length = getArgLength(index);
+
+        // Longer numbers can overflow, they are not needed by the protocols.
+        if (length == 0 || length > MAX_INT_DIGITS) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = getArgChar(index, i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses an argument as a non-negative decimal number.
+     * @param index The index of the argument
+     */
+    //@ requires isArgInt(index);
+    /*@ pure */
+    public int getArgInt(int index) {
+        if (!isArgInt(index)) {
+            throw new ArgumentException("index", "Not a valid integer");
+        }
+
+        int result = 0;
+
+        for (int i = 0; i < getArgLength(index); i++) {
+            result = result * RADIX + getArgChar(index, i) - '0';
+        }
+
+        return result;
+    }
+
+    private void addArg(int start, int end, boolean hasQuotes) {
+        if (argCount == argStarts.length) {
+            int[] newStarts = new int[argCount * 2];
+            int[] newEnds = new int[argCount * 2];
+            boolean[] newQuoted = new boolean[argCount * 2];
+
+            System.arraycopy(argStarts, 0, newStarts, 0, argCount);
+            System.arraycopy(argEnds, 0, newEnds, 0, argCount);
+            System.arraycopy(argQuoted, 0, newQuoted, 0, argCount);
+            argStarts = newStarts;
+            argEnds = newEnds;
+            argQuoted = newQuoted;
+        }
+
+        argQuoted[argCount] = hasQuotes;
+
+        if (hasQuotes) {
+            // The quotes can be anywhere in the argument, so it is copied without them.
+            if (quotedLength + end - start > quotedChars.length) {
+                char[] newChars = new char[Math.max(quotedChars.length * 2,
+                        quotedLength + end - start)];
+
+                System.arraycopy(quotedChars, 0, newChars, 0, quotedLength);
+                quotedChars = newChars;
+            }
+
+            argStarts[argCount] = quotedLength;
+
+            for (int i = start; i < end; i++) {
+                char c = packet.charAt(i);
+
+                if (c != QUOTE) {
+                    quotedChars[quotedLength++] = c;
+                }
+            }
+
+            argEnds[argCount] = quotedLength;
+        } else {
+            argStarts[argCount] = start;
+            argEnds[argCount] = end;
+        }
+
+        argCount++;
+    }
+
+    private char charAt(int index, int position) {
+        return argQuoted[index] ? quotedChars[position] : packet.charAt(position);
+    }
+
+    private int indexOfCommandEnd() {
+        // Computes the hash while searching, using the same formula as String.hashCode.
+        int hash = 0;
+        int i = 0;
+
+        while (i < packet.length() && packet.charAt(i) != delimiter) {
+            hash = HASH_MULTIPLIER * hash + packet.charAt(i);
+            i++;
+        }
+
+        commandHash = hash;
+
+        return i;
+    }
+
+    private boolean regionEquals(int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            if (packet.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= argCount) {
+            throw new ArgumentOutOfRangeException("index", 0, argCount);
+        }
+    }
+}
@@ -2,12 +2,15 @@ package tests.game;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import findfour.shared.ArgumentException;
+import findfour.shared.ArgumentOutOfRangeException;
 import findfour.shared.game.Board;
 import findfour.shared.game.Disc;
 
@@ -108,6 +111,128 @@ public class BoardTests {
         assertTrue(b3.getWinner() == Disc.None);
     }
 
+    @Test
+    public void testHasWinnerLines() {
+        Board horizontal = new Board();
+        Board diagonalUp = new Board();
+        Board diagonalDown = new Board();
+        Board diagonalCorner = new Board();
+
+        for (int i = 0; i < 4; i++) {
+            horizontal.setSlot(i + 3, 5, Disc.Yellow);
+            diagonalUp.setSlot(i, 5 - i, Disc.Red);
+            diagonalDown.setSlot(i + 3, i + 2, Disc.Yellow);
+            diagonalCorner.setSlot(3 - i, i, Disc.Yellow);
+        }
+
+        assertTrue(horizontal.getWinner() == Disc.Yellow);
+        assertTrue(diagonalUp.getWinner() == Disc.Red);
+        assertTrue(diagonalDown.getWinner() == Disc.Yellow);
+        assertTrue(diagonalCorner.getWinner() == Disc.Yellow);
+
+        // Three in a row that continue into the next column must not count as a win.
+        b1.setSlot(0, 0, Disc.Red);
+        b1.setSlot(0, 1, Disc.Red);
+        b1.setSlot(0, 2, Disc.Red);
+        b1.setSlot(1, 5, Disc.Red);
+
+        assertFalse(b1.hasWinner());
+    }
+
+    @Test
+    public void testMakeMoveWinner() {
+        for (int i = 0; i < 3; i++) {
+            b1.makeMove(i, Disc.Yellow);
+            b1.makeMove(i, Disc.Red);
+            assertFalse(b1.hasWinner());
+        }
+
+        b1.makeMove(3, Disc.Yellow);
+
+        assertTrue(b1.getWinner() == Disc.Yellow);
+
+        // Clearing a slot of the winning sequence has to reset the winner.
+        b1.setSlot(3, 5, Disc.None);
+
+        assertFalse(b1.hasWinner());
+    }
+
+    @Test
+    public void testUndoMove() {
+        b3.makeMove(2, Disc.Yellow);
+        b3.undoMove(2);
+        b3.undoMove(1);
+
+        assertTrue(b3.getSlot(2, 4) == Disc.None);
+        assertTrue(b3.getSlot(1, 0) == Disc.None);
+        assertEquals(b3.getNextFreeSlot(1), 0);
+
+        b2.makeMove(0, Disc.Red);
+        b2.undoMove(0);
+
+        // Undoing a move that did not complete the sequence keeps the winner.
+        assertTrue(b2.getWinner() == Disc.Red);
+
+        b2.undoMove(0);
+
+        assertFalse(b2.hasWinner());
+    }
+
+    @Test(expected = ArgumentException.class)
+    public void testUndoMoveEmptyColumn() {
+        b1.undoMove(0);
+    }
+
+    @Test(expected = ArgumentOutOfRangeException.class)
+    public void testMakeMoveFullColumn() {
+        b3.makeMove(1, Disc.Red);
+    }
+
+    @Test
+    public void testGetHash() {
+        Board board = new Board();
+
+        b1.makeMove(0, Disc.Red);
+        b1.makeMove(1, Disc.Yellow);
+        board.makeMove(1, Disc.Yellow);
+        board.makeMove(0, Disc.Red);
+
+        assertEquals(b1.getHash(), board.getHash());
+
+        board.undoMove(0);
+
+        assertNotEquals(b1.getHash(), board.getHash());
+
+        board.setSlot(0, 5, Disc.Yellow);
+        board.setSlot(0, 5, Disc.Red);
+
+        assertEquals(b1.getHash(), board.getHash());
+
+        b1.undoMove(1);
+        b1.undoMove(0);
+
+        assertEquals(b1.getHash(), new Board().getHash());
+    }
+
+    @Test
+    public void testGetDiscs() {
+        assertEquals(0, b1.getDiscs(Disc.Red));
+        assertEquals(0, b1.getDiscs(Disc.Yellow));
+        assertEquals(Board.COLUMNS * Board.ROWS, Long.bitCount(b1.getDiscs(Disc.None)));
+        assertEquals(0, b1.getDiscCount());
+
+        // The bottom slot of a column is the lowest bit of that column.
+        b1.makeMove(0, Disc.Red);
+        b1.makeMove(0, Disc.Yellow);
+        b1.makeMove(1, Disc.Red);
+
+        assertEquals(1L | 1L << (Board.ROWS + 1), b1.getDiscs(Disc.Red));
+        assertEquals(1L << 1, b1.getDiscs(Disc.Yellow));
+        assertEquals(0, b1.getDiscs(Disc.None) & b1.getDiscs(Disc.Red));
+        assertEquals(0, b1.getDiscs(Disc.None) & b1.getDiscs(Disc.Yellow));
+        assertEquals(3, b1.getDiscCount());
+    }
+
     @Test
     public void testIsFull() {
         for (int i = 0; i < Board.COLUMNS; i++) {
@@ -119,6 +244,10 @@ public class BoardTests {
         assertTrue(b1.isFull());
         assertFalse(b2.isFull());
         assertFalse(b3.isFull());
+
+        b1.setSlot(3, 0, Disc.None);
+
+        assertFalse(b1.isFull());
     }
 
     @Test
@@ -65,6 +65,26 @@ public class GameStateTests {
         assertTrue(state2.getWinner() == Disc.Red);
     }
 
+    @Test
+    public void testUndo() {
+        state2.makeMove(1, Disc.Yellow);
+        state2.undo();
+
+        assertTrue(state2.getCurrentTurn() == Disc.Yellow);
+        assertTrue(state2.getBoard().getSlot(1, 5) == Disc.None);
+        assertTrue(state2.getBoard().getSlot(0, 5) == Disc.Red);
+
+        state2.undo();
+
+        assertTrue(state2.getCurrentTurn() == Disc.Red);
+        assertTrue(state2.getMoveCount() == 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUndoWithoutMoves() {
+        state1.undo();
+    }
+
     @Test
     public void testGetCurrentTurn() {
         assertTrue(state1.getCurrentTurn() == Disc.Red);
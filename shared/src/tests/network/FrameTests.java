@@ -0,0 +1,68 @@
+package tests.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import findfour.shared.network.FrameReader;
+import findfour.shared.network.FrameWriter;
+import findfour.shared.network.MalformedFrameException;
+
+public class FrameTests {
+
+    @Test
+    public void testRoundTrip() {
+        ByteBuffer frame = new FrameWriter(19).writeVarInt(300).writeBoolean(true)
+                .writeString("h\u00e9llo").writeVarInt(Integer.MAX_VALUE).toFrame();
+        FrameReader reader = new FrameReader();
+
+        // The frame starts with the length of its payload, which is a varint too.
+        assertEquals(reader.read(frame), frame.remaining());
+        assertEquals(reader.readVarInt(), 19);
+        assertEquals(reader.readVarInt(), 300);
+        assertTrue(reader.readBoolean());
+        assertEquals(reader.readString(), "h\u00e9llo");
+        assertEquals(reader.readVarInt(), Integer.MAX_VALUE);
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void testLongPayload() {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            builder.append("abcdefghij");
+        }
+
+        ByteBuffer frame = new FrameWriter(1).writeString(builder.toString()).toFrame();
+        FrameReader reader = new FrameReader();
+
+        assertEquals(reader.read(frame), frame.remaining());
+        assertEquals(reader.readVarInt(), 1);
+        assertEquals(reader.readString(), builder.toString());
+    }
+
+    @Test(expected = MalformedFrameException.class)
+    public void testTruncatedString() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {23, 5, 'a', 'b'});
+        FrameReader reader = new FrameReader();
+
+        assertEquals(reader.read(payload), 23);
+        reader.readString();
+    }
+
+    @Test(expected = MalformedFrameException.class)
+    public void testInvalidBoolean() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {6, 1, 2});
+        FrameReader reader = new FrameReader();
+
+        reader.read(payload);
+        reader.readVarInt();
+        reader.readBoolean();
+    }
+
+}
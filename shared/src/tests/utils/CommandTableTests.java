@@ -0,0 +1,65 @@
+package tests.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import findfour.shared.ArgumentException;
+import findfour.shared.utils.CommandTable;
+import findfour.shared.utils.Tokenizer;
+
+public class CommandTableTests {
+
+    @Test
+    public void testLookup() {
+        CommandTable table = new CommandTable();
+        Tokenizer tokenizer = new Tokenizer(' ', false);
+
+        table.register("do_move", 0);
+        table.register("chat_global", 1);
+
+        tokenizer.tokenize("do_move 3");
+        assertEquals(table.lookup(tokenizer), 0);
+        tokenizer.tokenize("chat_global hello");
+        assertEquals(table.lookup(tokenizer), 1);
+        tokenizer.tokenize("chat_local hello");
+        assertEquals(table.lookup(tokenizer), CommandTable.UNKNOWN);
+        tokenizer.tokenize("");
+        assertEquals(table.lookup(tokenizer), CommandTable.UNKNOWN);
+        assertEquals(table.lookup("chat_global"), 1);
+    }
+
+    @Test
+    public void testGrow() {
+        CommandTable table = new CommandTable();
+        Tokenizer tokenizer = new Tokenizer(' ', false);
+
+        for (int i = 0; i < 100; i++) {
+            table.register("command" + i, i);
+        }
+
+        assertEquals(table.getCount(), 100);
+
+        for (int i = 0; i < 100; i++) {
+            tokenizer.tokenize("command" + i + " arg");
+            assertEquals(table.lookup(tokenizer), i);
+        }
+    }
+
+    @Test
+    public void testCommandHash() {
+        Tokenizer tokenizer = new Tokenizer(' ', false);
+
+        tokenizer.tokenize("request_move alice");
+        assertEquals(tokenizer.getCommandHash(), "request_move".hashCode());
+    }
+
+    @Test(expected = ArgumentException.class)
+    public void testRegisterTwice() {
+        CommandTable table = new CommandTable();
+
+        table.register("ready_for_game", 0);
+        table.register("ready_for_game", 1);
+    }
+
+}
@@ -0,0 +1,116 @@
+package tests.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import findfour.shared.utils.SerialExecutor;
+
+public class SerialExecutorTests {
+
+    @Test
+    public void testOrder() {
+        ManualExecutor pool = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(pool);
+        List<Integer> ran = new ArrayList<Integer>();
+
+        for (int i = 0; i < 3; i++) {
+            executor.execute(record(ran, i));
+        }
+
+        // The executor only occupies a single thread of the pool for all its tasks.
+        assertEquals(pool.pending.size(), 1);
+
+        pool.runAll();
+        assertEquals(ran.size(), 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals((int) ran.get(i), i);
+        }
+    }
+
+    @Test
+    public void testBatches() {
+        ManualExecutor pool = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(pool);
+        List<Integer> ran = new ArrayList<Integer>();
+
+        for (int i = 0; i < 100; i++) {
+            executor.execute(record(ran, i));
+        }
+
+        // The thread is given up after a batch, and the executor is scheduled again.
+        pool.pending.poll().run();
+        assertEquals(pool.pending.size(), 1);
+        assertFalse(ran.size() == 100);
+
+        pool.runAll();
+        assertEquals(ran.size(), 100);
+    }
+
+    @Test
+    public void testSerial() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        final SerialExecutor executor = new SerialExecutor(pool);
+        final AtomicBoolean running = new AtomicBoolean(false);
+        final AtomicBoolean overlapped = new AtomicBoolean(false);
+        final CountDownLatch done = new CountDownLatch(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!running.compareAndSet(false, true)) {
+                        overlapped.set(true);
+                    }
+
+                    running.set(false);
+                    done.countDown();
+                }
+            });
+        }
+
+        done.await(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(done.getCount(), 0);
+        assertFalse(overlapped.get());
+    }
+
+    private static Runnable record(final List<Integer> ran, final int value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(value);
+            }
+        };
+    }
+
+    private static final class ManualExecutor implements Executor {
+        private final Queue<Runnable> pending = new LinkedList<Runnable>();
+
+        @Override
+        public void execute(Runnable task) {
+            pending.add(task);
+        }
+
+        private void runAll() {
+            while (!pending.isEmpty()) {
+                pending.poll().run();
+            }
+        }
+    }
+
+}
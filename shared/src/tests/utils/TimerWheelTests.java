@@ -0,0 +1,106 @@
+package tests.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import findfour.shared.utils.TimerWheel;
+
+public class TimerWheelTests {
+
+    @Test
+    public void testExpire() {
+        TimerWheel wheel = new TimerWheel(100, 8);
+        List<Integer> fired = new ArrayList<Integer>();
+
+        wheel.schedule(record(fired, 1), 250);
+        wheel.schedule(record(fired, 2), 0);
+        wheel.schedule(record(fired, 3), 100);
+        assertEquals(wheel.getCount(), 3);
+
+        wheel.tick();
+        assertEquals(fired.size(), 2);
+        assertTrue(fired.contains(2) && fired.contains(3));
+
+        wheel.tick();
+        assertEquals(fired.size(), 2);
+
+        wheel.tick();
+        assertEquals(fired.size(), 3);
+        assertEquals((int) fired.get(2), 1);
+        assertEquals(wheel.getCount(), 0);
+    }
+
+    @Test
+    public void testRounds() {
+        // The delay spans several rotations of the wheel, so the timeout shares its bucket with
+        // timeouts that expire earlier.
+        TimerWheel wheel = new TimerWheel(10, 4);
+        List<Integer> fired = new ArrayList<Integer>();
+
+        wheel.schedule(record(fired, 1), 90);
+        wheel.schedule(record(fired, 2), 10);
+
+        for (int i = 1; i < 9; i++) {
+            wheel.tick();
+            assertEquals(fired.size(), 1);
+        }
+
+        wheel.tick();
+        assertEquals(fired.size(), 2);
+        assertEquals((int) fired.get(1), 1);
+    }
+
+    @Test
+    public void testCancel() {
+        TimerWheel wheel = new TimerWheel(10, 4);
+        List<Integer> fired = new ArrayList<Integer>();
+        TimerWheel.Timeout first = wheel.schedule(record(fired, 1), 10);
+        TimerWheel.Timeout second = wheel.schedule(record(fired, 2), 10);
+
+        assertTrue(first.cancel());
+        assertFalse(first.cancel());
+        assertEquals(wheel.getCount(), 1);
+
+        wheel.tick();
+        assertEquals(fired.size(), 1);
+        assertEquals((int) fired.get(0), 2);
+        assertTrue(second.isExpired());
+        assertFalse(second.cancel());
+        assertFalse(first.isExpired());
+    }
+
+    @Test
+    public void testScheduleFromTask() {
+        final TimerWheel wheel = new TimerWheel(10, 4);
+        final List<Integer> fired = new ArrayList<Integer>();
+
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.add(1);
+                wheel.schedule(record(fired, 2), 10);
+            }
+        }, 10);
+
+        wheel.tick();
+        assertEquals(fired.size(), 1);
+        wheel.tick();
+        assertEquals(fired.size(), 2);
+    }
+
+    private static Runnable record(final List<Integer> fired, final int value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                fired.add(value);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,112 @@
+package tests.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import findfour.shared.utils.StringUtils;
+import findfour.shared.utils.Tokenizer;
+
+public class TokenizerTests {
+
+    @Test
+    public void testCommand() {
+        Tokenizer tokenizer = new Tokenizer(' ', false);
+
+        tokenizer.tokenize("testing test test");
+        assertTrue(tokenizer.isCommand("testing"));
+        assertFalse(tokenizer.isCommand("test"));
+        assertEquals(tokenizer.getCommand(), "testing");
+
+        tokenizer.tokenize("test123");
+        assertTrue(tokenizer.isCommand("test123"));
+        assertFalse(tokenizer.hasArgs());
+        assertEquals(tokenizer.getArgCount(), 0);
+    }
+
+    @Test
+    public void testArgs() {
+        Tokenizer tokenizer = new Tokenizer(' ', false);
+
+        tokenizer.tokenize("testing test 123");
+        assertEquals(tokenizer.getArgCount(), 2);
+        assertTrue(tokenizer.argEquals(0, "test"));
+        assertFalse(tokenizer.argEquals(0, "tes"));
+        assertEquals(tokenizer.getArg(1), "123");
+        assertEquals(tokenizer.getArgLength(1), 3);
+        assertEquals(tokenizer.getArgChar(1, 2), '3');
+        assertEquals(tokenizer.getArgsOffset(), "testing ".length());
+
+        tokenizer.tokenize("testing");
+        assertEquals(tokenizer.getArgCount(), 0);
+    }
+
+    @Test
+    public void testQuotes() {
+        Tokenizer quoted = new Tokenizer(' ', true);
+        Tokenizer unquoted = new Tokenizer(' ', false);
+
+        quoted.tokenize("testing \"test 123\" testzzz");
+        assertEquals(quoted.getArgCount(), 2);
+        assertEquals(quoted.getArg(0), "test 123");
+        assertEquals(quoted.getArg(1), "testzzz");
+
+        unquoted.tokenize("testing \"test 123\"");
+        assertEquals(unquoted.getArgCount(), 2);
+        assertEquals(unquoted.getArg(0), "\"test");
+    }
+
+    @Test
+    public void testSameAsStringUtils() {
+        String[] packets = {"join  a b", "do_move 3 ", "a", "a ", "error 003 some message",
+            "cmd \"a b\"c d", "cmd a\"b c\"d", "cmd \"a b", "cmd a \"\"", "cmd \"\" a",
+            "cmd \"a\" \"b c\" \"d\"", };
+
+        for (String packet : packets) {
+            assertSameAsStringUtils(packet, false);
+            assertSameAsStringUtils(packet, true);
+        }
+    }
+
+    @Test
+    public void testQuotedArgs() {
+        Tokenizer tokenizer = new Tokenizer(' ', true);
+
+        tokenizer.tokenize("cmd a\"b c\"d 1\"2\"");
+        assertEquals(tokenizer.getArgCount(), 2);
+        assertTrue(tokenizer.argEquals(0, "ab cd"));
+        assertEquals(tokenizer.getArgLength(0), 5);
+        assertEquals(tokenizer.getArgChar(0, 2), ' ');
+        assertTrue(tokenizer.isArgInt(1));
+        assertEquals(tokenizer.getArgInt(1), 12);
+    }
+
+    @Test
+    public void testArgInt() {
+        Tokenizer tokenizer = new Tokenizer(' ', false);
+
+        tokenizer.tokenize("do_move 5 531 -1 x 9999999999");
+        assertTrue(tokenizer.isArgInt(0));
+        assertEquals(tokenizer.getArgInt(0), 5);
+        assertEquals(tokenizer.getArgInt(1), 531);
+        assertFalse(tokenizer.isArgInt(2));
+        assertFalse(tokenizer.isArgInt(3));
+        assertFalse(tokenizer.isArgInt(4));
+    }
+
+    private static void assertSameAsStringUtils(String packet, boolean allowQuotes) {
+        Tokenizer tokenizer = new Tokenizer(' ', allowQuotes);
+        String[] args = StringUtils.extractArgs(packet, ' ', allowQuotes);
+
+        tokenizer.tokenize(packet);
+        assertTrue(tokenizer.isCommand(StringUtils.extractCommand(packet, ' ')));
+        assertEquals(tokenizer.getArgCount(), args.length);
+
+        for (int i = 0; i < args.length; i++) {
+            assertEquals(tokenizer.getArg(i), args[i]);
+        }
+    }
+
+}